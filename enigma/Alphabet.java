@@ -1,4 +1,6 @@
 package enigma;
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 
@@ -11,6 +13,25 @@ class Alphabet {
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
         thechars = chars;
+        _chars = chars.toCharArray();
+        char lo = Character.MAX_VALUE, hi = Character.MIN_VALUE;
+        for (char ch : _chars) {
+            lo = (char) Math.min(lo, ch);
+            hi = (char) Math.max(hi, ch);
+        }
+        if (_chars.length == 0 || hi - lo < DENSE_SPAN) {
+            _base = lo;
+            _dense = new int[_chars.length == 0 ? 0 : hi - lo + 1];
+            Arrays.fill(_dense, -1);
+        } else {
+            int cap = Integer.highestOneBit(_chars.length * 2 - 1) << 1;
+            _keys = new char[cap];
+            _slots = new int[cap];
+            Arrays.fill(_slots, -1);
+        }
+        for (int k = _chars.length - 1; k >= 0; k -= 1) {
+            put(_chars[k], k);
+        }
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -20,17 +41,12 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return thechars.length();
+        return _chars.length;
     }
 
     /** Returns true if preprocess(CH) is in this alphabet. */
     boolean contains(char ch) {
-        for (int e = 0; e < size(); e++) {
-            if (thechars.charAt(e) == ch) {
-                return true;
-            }
-        }
-        return false;
+        return lookup(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -39,20 +55,75 @@ class Alphabet {
         if (index >= size() || index < 0) {
             throw error("character index isn't in range");
         }
-        return thechars.charAt(index);
+        return _chars[index];
     }
 
     /** Returns the index of character preprocess(CH), which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        for (int z = 0; z < size(); z++) {
-            if (thechars.charAt(z) == ch) {
-                return z;
+        int index = lookup(ch);
+        if (index < 0) {
+            throw new EnigmaException("character not in alphabet");
+        }
+        return index;
+    }
+
+    /** Record that CH has index INDEX, replacing any earlier entry, so
+     *  that filling from the back leaves the first occurrence of a
+     *  duplicated character in place. */
+    private void put(char ch, int index) {
+        if (_dense != null) {
+            _dense[ch - _base] = index;
+            return;
+        }
+        int mask = _keys.length - 1;
+        int h = hash(ch) & mask;
+        while (_slots[h] >= 0 && _keys[h] != ch) {
+            h = (h + 1) & mask;
+        }
+        _keys[h] = ch;
+        _slots[h] = index;
+    }
+
+    /** Return the index of CH, or -1 if CH is not in this alphabet. */
+    private int lookup(char ch) {
+        if (_dense != null) {
+            int off = ch - _base;
+            return off < 0 || off >= _dense.length ? -1 : _dense[off];
+        }
+        int mask = _keys.length - 1;
+        int h = hash(ch) & mask;
+        while (_slots[h] >= 0) {
+            if (_keys[h] == ch) {
+                return _slots[h];
             }
+            h = (h + 1) & mask;
         }
-        throw new EnigmaException("character not in alphabet");
+        return -1;
+    }
+
+    /** Return a well-mixed hash of CH for the sparse table. */
+    private static int hash(char ch) {
+        int h = ch * 0x9E3779B1;
+        return h ^ (h >>> 16);
     }
 
+    /** Alphabets whose characters span fewer than this many code units
+     *  are indexed by a dense array; wider ones use an open-addressed
+     *  hash table. */
+    static final int DENSE_SPAN = 4096;
+
     /** additional field. */
     private String thechars;
+    /** The characters of this alphabet, indexed by position. */
+    private final char[] _chars;
+    /** The smallest character in a densely indexed alphabet. */
+    private char _base;
+    /** Dense index: _dense[CH - _base] is the index of CH, or -1.  Null
+     *  for sparse alphabets. */
+    private int[] _dense;
+    /** Keys of the sparse index (open addressing, linear probing). */
+    private char[] _keys;
+    /** Values of the sparse index; -1 marks an empty slot. */
+    private int[] _slots;
 }
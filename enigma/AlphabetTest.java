@@ -0,0 +1,55 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Jerome
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Check that ALPHA maps each character of CHARS to its index and
+     *  back, and rejects NOTIN. */
+    private void checkAlphabet(Alphabet alpha, String chars, char notIn) {
+        assertEquals(chars.length(), alpha.size());
+        for (int i = 0; i < chars.length(); i += 1) {
+            assertTrue(alpha.contains(chars.charAt(i)));
+            assertEquals(i, alpha.toInt(chars.charAt(i)));
+            assertEquals(chars.charAt(i), alpha.toChar(i));
+        }
+        assertFalse(alpha.contains(notIn));
+    }
+
+    @Test
+    public void denseAlphabet() {
+        checkAlphabet(new Alphabet(), "ABCDEFGHIJKLMNOPQRSTUVWXYZ", 'a');
+        checkAlphabet(new Alphabet("ZYX.0"), "ZYX.0", 'A');
+    }
+
+    @Test
+    public void sparseAlphabet() {
+        String chars = "A\u0416\u4e2d\uffee.z";
+        checkAlphabet(new Alphabet(chars), chars, '\u4e2e');
+        StringBuilder wide = new StringBuilder();
+        for (char c = 'A'; wide.length() < 300; c += 97) {
+            wide.append(c);
+        }
+        checkAlphabet(new Alphabet(wide.toString()), wide.toString(), 'B');
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void missingCharacter() {
+        new Alphabet("ABC").toInt('D');
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void badIndex() {
+        new Alphabet("ABC").toChar(3);
+    }
+}
@@ -0,0 +1,226 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static enigma.EnigmaException.*;
+
+/** Converts many input files with one configuration, each file as Main
+ *  would convert it on its own, so that a job with many small files pays
+ *  for starting a JVM and reading the configuration once.  Files are
+ *  converted on a fork-join pool, each thread with a Pipeline using its
+ *  own copy of the machine, with at most a few files per thread in
+ *  flight.  Results are written in the order the files were given:
+ *  either each to a file of the same name with ".out" appended in an
+ *  output directory, or all, one after another, to one channel.  A file
+ *  whose conversion fails for any reason is reported and skipped, and
+ *  the others are converted regardless, but inputs that would be written
+ *  to the same output file are rejected before any is converted.
+ *  @author Jerome
+ */
+class BatchProcessor {
+
+    /** A processor converting with copies of PROTOTYPE on PARALLELISM
+     *  threads, using keystreams from CACHE (none if null). */
+    BatchProcessor(Machine prototype, int parallelism, KeystreamCache cache) {
+        _prototype = prototype;
+        _parallelism = parallelism;
+        _cache = cache;
+    }
+
+    /** Return the files named by NAMES, in order, where a directory stands
+     *  for the regular files in it, in order of name. */
+    static List<Path> inputs(List<String> names) {
+        ArrayList<Path> result = new ArrayList<>();
+        for (String name : names) {
+            Path path = Paths.get(name);
+            if (!Files.isDirectory(path)) {
+                result.add(path);
+                continue;
+            }
+            try (Stream<Path> entries = Files.list(path)) {
+                result.addAll(entries.filter(Files::isRegularFile).sorted()
+                              .collect(Collectors.toList()));
+            } catch (IOException excp) {
+                throw error("could not read directory %s", name);
+            }
+        }
+        return result;
+    }
+
+    /** Convert each of INPUTS, writing its result to a file in OUTDIR if
+     *  OUTDIR is not null, and otherwise to OUTPUT.  Reports each file in
+     *  error, and a summary, on REPORT.  Return the number of files in
+     *  error. */
+    int process(List<Path> inputs, Path outDir, WritableByteChannel output,
+                PrintStream report) throws IOException {
+        List<Path> targets = targets(inputs, outDir);
+        ForkJoinPool pool = new ForkJoinPool(_parallelism);
+        ThreadLocal<Pipeline> pipelines = ThreadLocal.withInitial(() -> {
+            Pipeline pipeline = new Pipeline(_prototype.copy());
+            pipeline.setCache(_cache);
+            return pipeline;
+        });
+        if (outDir != null) {
+            Files.createDirectories(outDir);
+        }
+        ArrayDeque<Future<Result>> pending = new ArrayDeque<>();
+        long start = System.nanoTime();
+        try {
+            for (int k = 0; k < inputs.size(); k += 1) {
+                Path input = inputs.get(k), target = targets.get(k);
+                pending.addLast(pool.submit(() ->
+                    convert(pipelines.get(), input, target)));
+                while (pending.size() > MAX_PENDING_PER_THREAD
+                       * _parallelism) {
+                    finish(pending.removeFirst(), output, report);
+                }
+            }
+            while (!pending.isEmpty()) {
+                finish(pending.removeFirst(), output, report);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        report.printf("converted %d of %d files (%,d bytes) in %.2f s: "
+                      + "%,.0f files/s, %,.1f MB/s%n",
+                      inputs.size() - _failures, inputs.size(), _bytes, secs,
+                      inputs.size() / secs, _bytes / secs / 1e6);
+        return _failures;
+    }
+
+    /** Return the output files in OUTDIR for INPUTS, in order: each named
+     *  as its input with ".out" appended.  Return nulls if OUTDIR is null.
+     *  It is an error for two inputs to have the same output file. */
+    static List<Path> targets(List<Path> inputs, Path outDir) {
+        ArrayList<Path> result = new ArrayList<>(inputs.size());
+        HashMap<Path, Path> sources = new HashMap<>();
+        for (Path input : inputs) {
+            Path target = outDir == null ? null
+                : outDir.resolve(input.getFileName() + ".out");
+            if (target != null) {
+                Path other = sources.put(target, input);
+                if (other != null) {
+                    throw error("%s and %s would both be written to %s",
+                                other, input, target);
+                }
+            }
+            result.add(target);
+        }
+        return result;
+    }
+
+    /** Convert INPUT with PIPELINE, writing the result to TARGET if it is
+     *  not null, and otherwise returning it. */
+    private static Result convert(Pipeline pipeline, Path input,
+                                  Path target) {
+        try (FileChannel in = FileChannel.open(input)) {
+            long size = in.size();
+            if (target != null) {
+                try (FileChannel out =
+                     FileChannel.open(target, StandardOpenOption.CREATE,
+                                      StandardOpenOption.WRITE,
+                                      StandardOpenOption.TRUNCATE_EXISTING)) {
+                    pipeline.process(in, out);
+                }
+                return new Result(input, size, null, null);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            pipeline.process(in, Channels.newChannel(out));
+            return new Result(input, size, out.toByteArray(), null);
+        } catch (EnigmaException | IOException excp) {
+            return new Result(input, 0, null, excp.getMessage());
+        } catch (RuntimeException excp) {
+            return new Result(input, 0, null, excp.toString());
+        }
+    }
+
+    /** Wait for RESULT, then write its output, if any, to OUTPUT, or
+     *  report its error on REPORT. */
+    private void finish(Future<Result> result, WritableByteChannel output,
+                        PrintStream report) throws IOException {
+        Result done;
+        try {
+            done = result.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        if (done._error != null) {
+            report.printf("Error: %s: %s%n", done._input, done._error);
+            _failures += 1;
+            return;
+        }
+        _bytes += done._size;
+        if (done._output != null) {
+            ByteBuffer bytes = ByteBuffer.wrap(done._output);
+            while (bytes.hasRemaining()) {
+                output.write(bytes);
+            }
+        }
+    }
+
+    /** The outcome of converting one file. */
+    private static final class Result {
+
+        /** The outcome of converting INPUT, of SIZE bytes, giving OUTPUT
+         *  (null if written elsewhere) or failing with message ERROR
+         *  (null if it succeeded). */
+        Result(Path input, long size, byte[] output, String error) {
+            _input = input;
+            _size = size;
+            _output = output;
+            _error = error;
+        }
+
+        /** The file converted. */
+        private final Path _input;
+        /** Its size in bytes. */
+        private final long _size;
+        /** Its conversion, if not written to a file. */
+        private final byte[] _output;
+        /** Description of its error, or null. */
+        private final String _error;
+    }
+
+    /** Maximum number of files per thread whose results await output. */
+    private static final int MAX_PENDING_PER_THREAD = 4;
+
+    /** The machine whose copies convert the files. */
+    private final Machine _prototype;
+    /** Number of worker threads. */
+    private final int _parallelism;
+    /** Source of keystreams shared by all threads, or null. */
+    private final KeystreamCache _cache;
+    /** Number of files in error so far. */
+    private int _failures;
+    /** Number of bytes converted so far. */
+    private long _bytes;
+}
@@ -0,0 +1,136 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the BatchProcessor class.
+ *  @author Jerome
+ */
+public class BatchProcessorTest {
+
+    /** Return the conversion of INPUT by a single Pipeline. */
+    private static String convert(String input) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Pipeline(navalMachine(4))
+            .process(Channels.newChannel(
+                         new ByteArrayInputStream(input.getBytes())),
+                     Channels.newChannel(out));
+        return out.toString();
+    }
+
+    /** Delete DIR and everything in it. */
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths
+                     .sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void batchTest() throws IOException {
+        Path dir = Files.createTempDirectory("enigma-batch");
+        try {
+            Path in = Files.createDirectory(dir.resolve("in"));
+            ArrayList<String> expected = new ArrayList<>();
+            for (int k = 0; k < 20; k += 1) {
+                String text = "* B Beta III II A" + (char) ('A' + k)
+                    + "L (HQ)\nHELLO WORLD MESSAGE NUMBER\n"
+                    + "A".repeat(k) + "\n";
+                Files.write(in.resolve(String.format("msg%02d", k)),
+                            text.getBytes());
+                expected.add(convert(text));
+            }
+            Files.write(in.resolve("msg99"), "HELLO\n".getBytes());
+            Path out = dir.resolve("out");
+            ByteArrayOutputStream report = new ByteArrayOutputStream();
+            ByteArrayOutputStream all = new ByteArrayOutputStream();
+            BatchProcessor batch =
+                new BatchProcessor(navalMachine(4), 3,
+                                   new KeystreamCache(4, 8));
+            List<Path> inputs =
+                BatchProcessor.inputs(Arrays.asList(in.toString()));
+            assertEquals(21, inputs.size());
+            assertEquals(1, batch.process(inputs, out, null,
+                                          new PrintStream(report)));
+            for (int k = 0; k < 20; k += 1) {
+                assertEquals(expected.get(k), new String(Files.readAllBytes(
+                    out.resolve(String.format("msg%02d.out", k)))));
+            }
+            assertTrue(report.toString().contains("msg99"));
+            assertTrue(report.toString().contains("converted 20 of 21"));
+
+            assertEquals(1, new BatchProcessor(
+                             navalMachine(4), 2, null)
+                         .process(inputs, null, Channels.newChannel(all),
+                                  new PrintStream(report)));
+            assertEquals(String.join("", expected), all.toString());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void failureTest() throws IOException {
+        Path dir = Files.createTempDirectory("enigma-batch");
+        try {
+            String good = "* B Beta III II AXL (HQ)\nHELLO WORLD\n";
+            Path a = Files.write(dir.resolve("a"), good.getBytes());
+            Path b = Files.write(dir.resolve("b"),
+                                 "* B Beta III IX AXL\nHELLO\n".getBytes());
+            Path c = Files.write(dir.resolve("c"), good.getBytes());
+            Path out = dir.resolve("out");
+            ByteArrayOutputStream report = new ByteArrayOutputStream();
+            assertEquals(1, new BatchProcessor(navalMachine(4), 2, null)
+                         .process(Arrays.asList(a, b, c), out, null,
+                                  new PrintStream(report)));
+            assertTrue(report.toString().contains(b.toString()));
+            assertTrue(report.toString().contains("converted 2 of 3"));
+            assertEquals(convert(good), new String(Files.readAllBytes(
+                out.resolve("c.out"))));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void collisionTest() throws IOException {
+        Path dir = Files.createTempDirectory("enigma-batch");
+        try {
+            Path a = Files.createDirectory(dir.resolve("a"));
+            Path b = Files.createDirectory(dir.resolve("b"));
+            String text = "* B Beta III II AXL (HQ)\nHELLO WORLD\n";
+            Files.write(a.resolve("x.in"), text.getBytes());
+            Files.write(b.resolve("x.in"), text.getBytes());
+            Path out = dir.resolve("out");
+            try {
+                new BatchProcessor(navalMachine(4), 2, null)
+                    .process(Arrays.asList(a.resolve("x.in"),
+                                           b.resolve("x.in")),
+                             out, null, System.err);
+                fail("colliding outputs accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("x.in.out"));
+            }
+            assertFalse(Files.exists(out.resolve("x.in.out")));
+        } finally {
+            delete(dir);
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/** Throughput benchmark suite for the enigma engine.  Each benchmark is
+ *  run for every combination of alphabet size and rotor count, on a
+ *  machine with randomly generated rotors, in the manner of JMH: a number
+ *  of untimed warmup iterations, then timed measurement iterations,
+ *  reported as mean operations per second with the half-width of a 99.9%
+ *  confidence interval.  Results are accumulated into a sink so that the
+ *  JIT cannot discard the work.
+ *
+ *  Usage: java enigma.Benchmark [OPTIONS] [NAME...]
+ *  Runs only benchmarks whose names contain one of the NAMEs (all if none
+ *  are given).  OPTIONS are
+ *    -wi N    warmup iterations (default 3),
+ *    -i N     measurement iterations (default 5),
+ *    -n N     characters per iteration (default 1000000),
+ *    -a A,..  alphabet sizes (default 26,64,256), and
+ *    -r R,..  rotor counts, counting the reflector (default 3,5,10).
+ *  @author Jerome
+ */
+public final class Benchmark {
+
+    /** Run the benchmarks selected by ARGS (see class comment). */
+    public static void main(String... args) throws IOException {
+        ArrayList<String> names = new ArrayList<>();
+        int[] alphabets = {26, 64, 256};
+        int[] rotorCounts = {3, 5, 10};
+        for (int k = 0; k < args.length; k += 1) {
+            switch (args[k]) {
+            case "-wi":
+                _warmups = Integer.parseInt(args[++k]);
+                break;
+            case "-i":
+                _iterations = Integer.parseInt(args[++k]);
+                break;
+            case "-n":
+                _length = Integer.parseInt(args[++k]);
+                break;
+            case "-a":
+                alphabets = parseList(args[++k]);
+                break;
+            case "-r":
+                rotorCounts = parseList(args[++k]);
+                break;
+            default:
+                names.add(args[k]);
+            }
+        }
+        _names = names;
+
+        System.out.printf("%-18s %8s %6s %5s %3s %14s   %12s  %s%n",
+                          "Benchmark", "alphabet", "rotors", "Mode", "Cnt",
+                          "Score", "Error", "Units");
+        for (int size : alphabets) {
+            for (int numRotors : rotorCounts) {
+                runAll(new Config(size, numRotors, new Random(size
+                                                              + numRotors)));
+            }
+        }
+        System.out.printf("(sink %d)%n", _sink);
+    }
+
+    /** Run the selected benchmarks on the machine described by CONFIG. */
+    private static void runAll(Config config) throws IOException {
+        Machine machine = config.machine();
+        Alphabet alpha = machine.alphabet();
+        int size = alpha.size();
+        int[] msg = randomMessage(_length, size, 61);
+        char[] text = new char[_length];
+        for (int i = 0; i < _length; i += 1) {
+            text[i] = alpha.toChar(msg[i]);
+        }
+        String textString = new String(text);
+        char[] result = new char[_length];
+        Rotor rotor = machine.getRotorList()[machine.numRotors() - 1];
+        Permutation perm = rotor.permutation();
+
+        run("permute", config, () -> {
+            int x = 0;
+            for (int i = 0; i < _length; i += 1) {
+                x = perm.permute(x ^ msg[i]);
+            }
+            return x;
+        });
+        run("invert", config, () -> {
+            int x = 0;
+            for (int i = 0; i < _length; i += 1) {
+                x = perm.invert(x ^ msg[i]);
+            }
+            return x;
+        });
+        run("convertForward", config, () -> {
+            int x = 0;
+            for (int i = 0; i < _length; i += 1) {
+                rotor.set(msg[i]);
+                x = rotor.convertForward(x);
+            }
+            return x;
+        });
+        run("convertBackward", config, () -> {
+            int x = 0;
+            for (int i = 0; i < _length; i += 1) {
+                rotor.set(msg[i]);
+                x = rotor.convertBackward(x);
+            }
+            return x;
+        });
+        run("convert(int)", config, () -> {
+            long x = 0;
+            machine.setComposite(false);
+            for (int i = 0; i < _length; i += 1) {
+                x += machine.convert(msg[i]);
+            }
+            return x;
+        });
+        run("convert(String)", config, () -> {
+            machine.setComposite(false);
+            return machine.convert(textString).charAt(_length - 1);
+        });
+        run("convert(char[])", config, () -> {
+            machine.setComposite(false);
+            machine.convert(text, 0, _length, result, 0);
+            return result[_length - 1];
+        });
+        run("composite", config, () -> {
+            machine.setComposite(true);
+            machine.convert(text, 0, _length, result, 0);
+            return result[_length - 1];
+        });
+        MachineDefinition definition = new MachineDefinition(machine);
+        Session session = definition.session(config.settings(0));
+        run("session", config, () -> {
+            session.convert(text, 0, _length, result, 0);
+            return result[_length - 1];
+        });
+        Session[] lanes = new Session[LANES];
+        char[][] streams = new char[LANES][];
+        for (int lane = 0; lane < LANES; lane += 1) {
+            lanes[lane] = definition.session(config.settings(lane));
+            streams[lane] = Arrays.copyOfRange(text, lane * _length / LANES,
+                                               (lane + 1) * _length / LANES);
+        }
+        SessionBatch batch = new SessionBatch(lanes);
+        run("lockstep", config, () -> {
+            batch.convert(streams);
+            return streams[LANES - 1][0];
+        });
+        if (selected("precomputed")) {
+            PrecomputedMachine pre =
+                new PrecomputedMachine(machine, PRECOMPUTED_LIMIT);
+            run("precomputed", config, () -> {
+                pre.rewind();
+                pre.convert(text, 0, _length, result, 0);
+                return result[_length - 1];
+            });
+        }
+        if (selected("Main.process")) {
+            File[] files = config.writeFiles(text);
+            String[] args = {files[0].getPath(), files[1].getPath(),
+                             files[2].getPath()};
+            run("Main.process", config, () -> {
+                new Main(args).process();
+                return files[2].length();
+            });
+        }
+    }
+
+    /** A benchmark body, performing _length operations per call. */
+    private interface Task {
+        /** Perform one iteration, returning a value that depends on all
+         *  the work done. */
+        long run() throws IOException;
+    }
+
+    /** Run benchmark NAME, if selected, by calling TASK, and report its
+     *  throughput on the machine described by CONFIG. */
+    private static void run(String name, Config config, Task task)
+        throws IOException {
+        if (!selected(name)) {
+            return;
+        }
+        for (int k = 0; k < _warmups; k += 1) {
+            _sink += task.run();
+        }
+        double[] scores = new double[_iterations];
+        double mean = 0;
+        for (int k = 0; k < _iterations; k += 1) {
+            long start = System.nanoTime();
+            _sink += task.run();
+            scores[k] = _length * 1e9 / (System.nanoTime() - start);
+            mean += scores[k] / _iterations;
+        }
+        double var = 0;
+        for (double score : scores) {
+            var += (score - mean) * (score - mean);
+        }
+        double error = _iterations < 2 ? Double.NaN
+            : Z_999 * Math.sqrt(var / (_iterations - 1) / _iterations);
+        System.out.printf("%-18s %8d %6d %5s %3d %,14.0f +- %,12.0f  %s%n",
+                          name, config.size(), config.numRotors(), "thrpt",
+                          _iterations, mean, error, "chars/s");
+    }
+
+    /** Return true iff benchmark NAME was selected on the command line. */
+    private static boolean selected(String name) {
+        if (_names.isEmpty()) {
+            return true;
+        }
+        for (String pattern : _names) {
+            if (name.contains(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the comma-separated integers in LIST. */
+    private static int[] parseList(String list) {
+        String[] parts = list.split(",");
+        int[] result = new int[parts.length];
+        for (int k = 0; k < parts.length; k += 1) {
+            result[k] = Integer.parseInt(parts[k]);
+        }
+        return result;
+    }
+
+    /** Return a random message of LENGTH indices into an alphabet of SIZE
+     *  characters, generated from SEED. */
+    static int[] randomMessage(int length, int size, long seed) {
+        Random random = new Random(seed);
+        int[] msg = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            msg[i] = random.nextInt(size);
+        }
+        return msg;
+    }
+
+    /** A randomly generated machine configuration: a reflector, one fixed
+     *  rotor, and moving rotors with one notch each, over an alphabet of
+     *  upper-case letters (for size 26) or CJK ideographs (which have no
+     *  case, so that Main's upper-casing leaves them alone). */
+    private static class Config {
+
+        /** A configuration with SIZE characters and NUMROTORS rotor slots,
+         *  drawn from RANDOM. */
+        Config(int size, int numRotors, Random random) {
+            _size = size;
+            _numRotors = numRotors;
+            StringBuilder chars = new StringBuilder();
+            for (int i = 0; i < size; i += 1) {
+                chars.append(size == UPPER.length() ? UPPER.charAt(i)
+                             : (char) ('\u4e00' + i));
+            }
+            _chars = chars.toString();
+            _cycles = new String[numRotors];
+            _notches = new String[numRotors];
+            for (int j = 0; j < numRotors; j += 1) {
+                ArrayList<Character> shuffled = new ArrayList<>();
+                for (char c : _chars.toCharArray()) {
+                    shuffled.add(c);
+                }
+                Collections.shuffle(shuffled, random);
+                StringBuilder cycles = new StringBuilder();
+                for (int i = 0; i < size; i += j == 0 ? 2 : size) {
+                    cycles.append('(');
+                    for (int k = i; k < i + (j == 0 ? 2 : size); k += 1) {
+                        cycles.append(shuffled.get(k));
+                    }
+                    cycles.append(')');
+                }
+                _cycles[j] = cycles.toString();
+                _notches[j] = j == 0 ? "R" : j == 1 ? "N"
+                    : "M" + _chars.charAt(random.nextInt(size));
+            }
+        }
+
+        /** Return my alphabet size. */
+        int size() {
+            return _size;
+        }
+
+        /** Return my number of rotor slots. */
+        int numRotors() {
+            return _numRotors;
+        }
+
+        /** Return a machine as configured, with all rotors inserted and
+         *  set to the first character of the alphabet. */
+        Machine machine() {
+            Alphabet alpha = new Alphabet(_chars);
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            String[] names = new String[_numRotors];
+            for (int j = 0; j < _numRotors; j += 1) {
+                names[j] = "R" + j;
+                Permutation perm = new Permutation(_cycles[j], alpha);
+                if (j == 0) {
+                    rotors.add(new Reflector(names[j], perm));
+                } else if (j == 1) {
+                    rotors.add(new FixedRotor(names[j], perm));
+                } else {
+                    rotors.add(new MovingRotor(names[j], perm,
+                                               _notches[j].substring(1)));
+                }
+            }
+            Machine machine = new Machine(alpha, _numRotors, _numRotors - 2,
+                                          rotors);
+            machine.insertRotors(names);
+            machine.setPlugboard(new Permutation("", alpha));
+            return machine;
+        }
+
+        /** Return a settings line for my rotors, in order, with initial
+         *  positions given by the digits of K, base alphabet size. */
+        String settings(int k) {
+            StringBuilder settings = new StringBuilder("*");
+            for (int j = 0; j < _numRotors; j += 1) {
+                settings.append(" R").append(j);
+            }
+            char[] positions = new char[_numRotors - 1];
+            for (int j = positions.length - 1; j >= 0; j -= 1, k /= _size) {
+                positions[j] = _chars.charAt(k % _size);
+            }
+            return settings.append(' ').append(positions).toString();
+        }
+
+        /** Write temporary files holding my configuration, an input file
+         *  with one settings line followed by TEXT in lines of 60
+         *  characters, and an (empty) output file, returning them in that
+         *  order. */
+        File[] writeFiles(char[] text) throws IOException {
+            File[] files = {
+                File.createTempFile("enigma", ".conf"),
+                File.createTempFile("enigma", ".in"),
+                File.createTempFile("enigma", ".out")
+            };
+            try (PrintWriter conf = new PrintWriter(files[0])) {
+                conf.println(_chars);
+                conf.printf("%d %d%n", _numRotors, _numRotors - 2);
+                for (int j = 0; j < _numRotors; j += 1) {
+                    conf.printf("R%d %s %s%n", j, _notches[j], _cycles[j]);
+                }
+            }
+            try (PrintWriter in = new PrintWriter(files[1])) {
+                in.println(settings(0));
+                for (int i = 0; i < text.length; i += LINE) {
+                    in.println(new String(text, i,
+                                          Math.min(LINE, text.length - i)));
+                }
+            }
+            for (File file : files) {
+                file.deleteOnExit();
+            }
+            return files;
+        }
+
+        /** Alphabet size. */
+        private final int _size;
+        /** Number of rotor slots. */
+        private final int _numRotors;
+        /** The characters of the alphabet. */
+        private final String _chars;
+        /** Cycles of the permutation of each rotor. */
+        private final String[] _cycles;
+        /** Type and notches of each rotor, as in a configuration file. */
+        private final String[] _notches;
+    }
+
+    /** The standard upper-case alphabet. */
+    private static final String UPPER = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    /** Length of the message lines given to Main.process. */
+    private static final int LINE = 60;
+    /** Number of messages converted at once by the lockstep benchmark. */
+    private static final int LANES = 8;
+    /** Table entries allowed for the precomputed benchmark. */
+    private static final int PRECOMPUTED_LIMIT = 1 << 24;
+    /** Normal quantile for a two-sided 99.9% confidence interval. */
+    private static final double Z_999 = 3.29;
+
+    /** Number of warmup iterations. */
+    private static int _warmups = 3;
+    /** Number of measurement iterations. */
+    private static int _iterations = 5;
+    /** Number of characters processed per iteration. */
+    private static int _length = 1000000;
+    /** Names selected on the command line. */
+    private static ArrayList<String> _names;
+    /** Accumulates results so that the JIT cannot discard the work. */
+    private static long _sink;
+}
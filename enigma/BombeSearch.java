@@ -0,0 +1,312 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext key search in the manner of the Turing-Welchman
+ *  bombe, which, unlike CribSearch, does not need to know the plugboard.
+ *
+ *  The crib and the ciphertext under it form a menu: a graph whose nodes
+ *  are characters, with an edge between the crib and ciphertext
+ *  characters at each position.  Write S(X) for the plugboard partner of
+ *  X, and E_i for the substitution made by the rotors alone at position
+ *  i.  An edge (A, B) at position i means that S(B) = E_i(S(A)), and since
+ *  the plugboard is its own inverse, a hypothesis S(A) = Y also implies
+ *  S(Y) = A (Welchman's diagonal board).  For each rotor order and
+ *  setting, the hypotheses S(T) = Y, for the menu's best-connected
+ *  character T, are closed under these implications, tracked as one
+ *  bitset of possible partners per character.  Since every implication
+ *  works both ways, a closure that gives some character two partners
+ *  refutes every hypothesis in it.  A key survives (a "stop") if some
+ *  closure is consistent, which, for a menu with a few loops, happens
+ *  for few wrong keys.  The closure also gives the plugboard pairs of
+ *  the menu's characters.
+ *
+ *  Keys are tested on a fork-join pool, one task per rotor order and
+ *  setting of slot 1, each thread with its own copy of the machine.
+ *  @author Jerome
+ */
+class BombeSearch {
+
+    /** A search using the rotors available to PROTOTYPE, on PARALLELISM
+     *  threads. */
+    BombeSearch(Machine prototype, int parallelism) {
+        _prototype = prototype;
+        _parallelism = parallelism;
+        _size = prototype.alphabet().size();
+        _words = (_size + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /** Return the settings lines of the stops for CRIB placed at OFFSET in
+     *  CIPHERTEXT, each with the plugboard pairs deduced for the menu's
+     *  characters, and settings those at the start of CIPHERTEXT.  Stops
+     *  are ordered as the keys of CribSearch.search.  If PROGRESS is not
+     *  null, reports progress on it about once a second. */
+    List<String> search(String ciphertext, String crib, int offset,
+                        PrintStream progress) {
+        Alphabet alpha = _prototype.alphabet();
+        if (offset < 0 || offset + crib.length() > ciphertext.length()) {
+            throw error("crib does not fit in the ciphertext");
+        }
+        if (crib.isEmpty()) {
+            throw error("empty crib");
+        }
+        int len = crib.length();
+        _from = new int[len];
+        _to = new int[len];
+        _offset = offset;
+        int[] degree = new int[_size];
+        for (int i = 0; i < len; i += 1) {
+            _from[i] = alpha.toInt(crib.charAt(i));
+            _to[i] = alpha.toInt(ciphertext.charAt(offset + i));
+            degree[_from[i]] += 1;
+            degree[_to[i]] += 1;
+        }
+        _test = 0;
+        for (int x = 1; x < _size; x += 1) {
+            if (degree[x] > degree[_test]) {
+                _test = x;
+            }
+        }
+
+        ArrayList<String[]> orders = CribSearch.rotorOrders(_prototype);
+        long perTask = CribSearch.power(_size, _prototype.numRotors() - 2);
+        long total = orders.size() * _size * perTask;
+        _tested.reset();
+        ThreadLocal<Machine> machines = ThreadLocal.withInitial(() -> {
+            Machine machine = _prototype.copy();
+            machine.setPlugboard(new Permutation("", _prototype.alphabet()));
+            machine.setComposite(false);
+            return machine;
+        });
+        ForkJoinPool pool = new ForkJoinPool(_parallelism);
+        ArrayList<Future<List<String>>> tasks = new ArrayList<>();
+        ArrayList<String> result = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            for (String[] order : orders) {
+                for (int first = 0; first < _size; first += 1) {
+                    int slot1 = first;
+                    tasks.add(pool.submit(() ->
+                        searchTask(machines.get(), order, slot1)));
+                }
+            }
+            pool.shutdown();
+            while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                if (progress != null) {
+                    long tested = _tested.sum();
+                    progress.printf("tested %,d of %,d keys (%.1f%%), "
+                                    + "%,.0f keys/s%n", tested, total,
+                                    100.0 * tested / total,
+                                    tested * 1e9
+                                    / (System.nanoTime() - start));
+                }
+            }
+            for (Future<List<String>> task : tasks) {
+                result.addAll(task.get());
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof EnigmaException) {
+                throw (EnigmaException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+        if (progress != null) {
+            double secs = (System.nanoTime() - start) / 1e9;
+            progress.printf("tested %,d keys in %.1f s (%,.0f keys/s): "
+                            + "%d stops%n", total, secs, total / secs,
+                            result.size());
+        }
+        return result;
+    }
+
+    /** Return the stops among the keys whose rotors are ORDER and whose
+     *  slot 1 setting is SLOT1, using MACHINE. */
+    private List<String> searchTask(Machine machine, String[] order,
+                                    int slot1) {
+        ArrayList<String> result = new ArrayList<>();
+        int n = machine.numRotors();
+        int len = _from.length;
+        machine.insertRotors(order);
+        int[] settings = new int[n];
+        settings[1] = slot1;
+        int[][] positions = new int[len][n];
+        int[] rotors = new int[len * _size];
+        long[] lit = new long[_size * _words];
+        long[] refuted = new long[_words];
+        int[] queue = new int[_size * _size];
+        long count = CribSearch.power(_size, n - 2);
+        for (long k = 0; k < count; k += 1) {
+            machine.setSettings(settings);
+            if (_offset > 0) {
+                machine.skip(_offset);
+            }
+            Rotor[] slots = machine.getRotorList();
+            for (int i = 0; i < len; i += 1) {
+                machine.step();
+                for (int j = 1; j < n; j += 1) {
+                    positions[i][j] = slots[j].setting();
+                }
+            }
+            Arrays.fill(rotors, -1);
+            Arrays.fill(refuted, 0);
+            for (int y = 0; y < _size; y += 1) {
+                if (isSet(refuted, 0, y)) {
+                    continue;
+                }
+                Arrays.fill(lit, 0);
+                if (close(y, machine, positions, rotors, lit, queue)) {
+                    result.add(stop(machine, order, settings, lit));
+                    break;
+                }
+                for (int w = 0; w < _words; w += 1) {
+                    refuted[w] |= lit[_test * _words + w];
+                }
+            }
+            for (int j = n - 1; j > 1; j -= 1) {
+                settings[j] += 1;
+                if (settings[j] < _size) {
+                    break;
+                }
+                settings[j] = 0;
+            }
+        }
+        _tested.add(count);
+        return result;
+    }
+
+    /** Close the hypothesis S(_test) = Y under the menu's implications,
+     *  where the rotors of MACHINE have settings POSITIONS[I] at crib
+     *  position I, and ROTORS caches their substitutions (see scramble).
+     *  Records the hypotheses in LIT (one row of _words words per
+     *  character), using QUEUE as scratch space.  Return false as soon
+     *  as some character has two partners. */
+    private boolean close(int y, Machine machine, int[][] positions,
+                          int[] rotors, long[] lit, int[] queue) {
+        int head = 0;
+        int tail = light(_test, y, lit, queue, 0);
+        while (head < tail) {
+            int a = queue[head] / _size, v = queue[head] % _size;
+            head += 1;
+            for (int i = 0; i < _from.length && tail >= 0; i += 1) {
+                if (_from[i] == a) {
+                    tail = light(_to[i],
+                                 scramble(machine, positions, rotors, i, v),
+                                 lit, queue, tail);
+                } else if (_to[i] == a) {
+                    tail = light(_from[i],
+                                 scramble(machine, positions, rotors, i, v),
+                                 lit, queue, tail);
+                }
+            }
+        }
+        return tail >= 0;
+    }
+
+    /** Return E_I(V), the substitution of V by the rotors of MACHINE with
+     *  settings POSITIONS[I], caching results in ROTORS, where element
+     *  I * size + V is E_I(V), or -1 if not yet known.  Most closures are
+     *  refuted after looking at a few substitutions, so computing them
+     *  only when needed is much faster than computing them all. */
+    private int scramble(Machine machine, int[][] positions, int[] rotors,
+                         int i, int v) {
+        int k = i * _size + v;
+        if (rotors[k] < 0) {
+            machine.setSettings(positions[i]);
+            int w = machine.substitute(v);
+            rotors[k] = w;
+            rotors[i * _size + w] = v;
+        }
+        return rotors[k];
+    }
+
+    /** Add the hypothesis S(A) = V, and so S(V) = A, to LIT, appending
+     *  any new ones to QUEUE, which has TAIL elements.  Return the new
+     *  length of QUEUE, or -1 if that gives A or V two partners. */
+    private int light(int a, int v, long[] lit, int[] queue, int tail) {
+        if (isSet(lit, a, v)) {
+            return tail;
+        }
+        if (!isEmpty(lit, a) || !isEmpty(lit, v)) {
+            return -1;
+        }
+        set(lit, a, v);
+        queue[tail++] = a * _size + v;
+        if (a != v) {
+            set(lit, v, a);
+            queue[tail++] = v * _size + a;
+        }
+        return tail;
+    }
+
+    /** Return the settings line for a stop with rotors ORDER at SETTINGS,
+     *  using MACHINE's alphabet, with the plugboard pairs in LIT. */
+    private String stop(Machine machine, String[] order, int[] settings,
+                        long[] lit) {
+        Alphabet alpha = machine.alphabet();
+        StringBuilder line =
+            new StringBuilder(CribSearch.settingsLine(machine, order,
+                                                      settings));
+        for (int a = 0; a < _size; a += 1) {
+            for (int v = a + 1; v < _size; v += 1) {
+                if (isSet(lit, a, v)) {
+                    line.append(" (").append(alpha.toChar(a))
+                        .append(alpha.toChar(v)).append(')');
+                }
+            }
+        }
+        return line.toString();
+    }
+
+    /** Return true iff bit V of row A of BITS is set. */
+    private boolean isSet(long[] bits, int a, int v) {
+        return (bits[a * _words + (v >>> 6)] & (1L << v)) != 0;
+    }
+
+    /** Return true iff row A of BITS is empty. */
+    private boolean isEmpty(long[] bits, int a) {
+        for (int w = a * _words; w < (a + 1) * _words; w += 1) {
+            if (bits[w] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Set bit V of row A of BITS. */
+    private void set(long[] bits, int a, int v) {
+        bits[a * _words + (v >>> 6)] |= 1L << v;
+    }
+
+    /** The machine whose rotors are searched. */
+    private final Machine _prototype;
+    /** Number of threads searching. */
+    private final int _parallelism;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Number of words in a bitset of characters. */
+    private final int _words;
+    /** Number of keys tested so far. */
+    private final LongAdder _tested = new LongAdder();
+    /** Menu edges: crib character I is enciphered as _to[I]. */
+    private int[] _from, _to;
+    /** Position of the crib in the ciphertext. */
+    private int _offset;
+    /** The character whose partner is hypothesized. */
+    private int _test;
+}
@@ -0,0 +1,105 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the BombeSearch class.
+ *  @author Jerome
+ */
+public class BombeSearchTest {
+
+    /** Check that the stop S, a settings line with plugboard pairs, is
+     *  consistent with the plugboard PLUGS, over alphabet ALPHA. */
+    private void checkPlugs(String s, String plugs, Alphabet alpha) {
+        Permutation expected = new Permutation(plugs, alpha);
+        String[] parts = s.split(" ");
+        for (String part : parts) {
+            if (part.startsWith("(")) {
+                assertEquals(part, part.charAt(2),
+                             expected.permute(part.charAt(1)));
+            }
+        }
+    }
+
+    @Test
+    public void navalTest() {
+        String plain = "KEINEBESONDERENEREIGNISSEXXWETTERKLARSICHTWEIT";
+        String plugs = "(AQ) (BJ) (EX) (KR) (NT) (SW)";
+        Machine sender = CiphertextAttackTest.machine();
+        sender.insertRotors(new String[] {"B", "II", "I"});
+        sender.setRotors("ZR");
+        sender.setPlugboard(new Permutation(plugs, UPPER));
+        String cipher = sender.convert(plain);
+        BombeSearch bombe = new BombeSearch(CiphertextAttackTest.machine(), 2);
+        String crib = plain.substring(4, 28);
+        List<String> stops = bombe.search(cipher, crib, 4, null);
+        String found = null;
+        for (String stop : stops) {
+            if (stop.startsWith("* B II I ZR ")) {
+                found = stop;
+            }
+        }
+        assertNotNull(found);
+        checkPlugs(found, plugs, UPPER);
+        assertTrue(stops.size() < 10);
+    }
+
+    @Test
+    public void customAlphabetTest() {
+        StringBuilder chars = new StringBuilder();
+        for (char ch = '!'; ch < '!' + 90; ch += 1) {
+            chars.append(ch);
+        }
+        Alphabet alpha = new Alphabet(chars.toString());
+        Random random = new Random(12);
+        ArrayList<Character> shuffled = new ArrayList<>();
+        for (char ch : chars.toString().toCharArray()) {
+            shuffled.add(ch);
+        }
+        Collections.shuffle(shuffled, random);
+        StringBuilder pairs = new StringBuilder();
+        for (int k = 0; k < 90; k += 2) {
+            pairs.append('(').append(shuffled.get(k))
+                .append(shuffled.get(k + 1)).append(')');
+        }
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation(pairs.toString(),
+                                                      alpha)));
+        for (String name : new String[] {"X", "Y"}) {
+            Collections.shuffle(shuffled, random);
+            StringBuilder cycle = new StringBuilder("(");
+            for (char ch : shuffled) {
+                cycle.append(ch);
+            }
+            rotors.add(new MovingRotor(name,
+                                       new Permutation(cycle + ")", alpha),
+                                       "!"));
+        }
+        Machine machine = new Machine(alpha, 3, 2, rotors);
+        machine.insertRotors(new String[] {"R", "Y", "X"});
+        machine.setRotors("5k");
+        String plugs = "(AB) (cd) (%z) (12)";
+        machine.setPlugboard(new Permutation(plugs, alpha));
+        String plain = "Attack_at_dawn_on_the_12th_day_of_%cd%";
+        String cipher = machine.convert(plain);
+
+        BombeSearch bombe = new BombeSearch(new Machine(alpha, 3, 2, rotors),
+                                            1);
+        List<String> stops = bombe.search(cipher, plain, 0, null);
+        String found = null;
+        for (String stop : stops) {
+            if (stop.startsWith("* R Y X 5k ")) {
+                found = stop;
+            }
+        }
+        assertNotNull(found);
+        checkPlugs(found, plugs, alpha);
+    }
+}
@@ -0,0 +1,149 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import static enigma.EnigmaException.*;
+
+/** The state of a Pipeline at the end of an input line, from which it can
+ *  resume converting as if it had never stopped: how many bytes of input
+ *  it had read and of output it had written, the last settings line it
+ *  applied, and the settings its rotors had reached since.  The input
+ *  line before that point has been completely converted and written, and
+ *  no output group is open, so nothing else about the pipeline needs
+ *  saving.  A tag, such as a digest of the configuration and the names
+ *  of the files, identifies the job it belongs to, and a hash of the
+ *  input converted identifies the input read so far, so that a job does
+ *  not resume from another's checkpoint.  Checkpoints are saved as small
+ *  property files, each replacing the last atomically, so that the file
+ *  holds some complete checkpoint whenever the job is stopped.
+ *  Immutable.
+ *  @author Jerome
+ */
+class Checkpoint {
+
+    /** A checkpoint for the job tagged TAG after INPUT bytes of input,
+     *  whose CRC-32C is INPUTHASH, have been converted into OUTPUT bytes of
+     *  output, with SETTINGS the last settings line and ROTORS the rotor
+     *  settings by slot, as for Machine.settingsAfter. */
+    Checkpoint(String tag, long input, long inputHash, long output,
+               String settings, int[] rotors) {
+        _tag = tag;
+        _input = input;
+        _inputHash = inputHash;
+        _output = output;
+        _settings = settings;
+        _rotors = rotors.clone();
+    }
+
+    /** Return the tag of my job. */
+    String tag() {
+        return _tag;
+    }
+
+    /** Return the number of input bytes converted. */
+    long input() {
+        return _input;
+    }
+
+    /** Return the CRC-32C of the input bytes converted. */
+    long inputHash() {
+        return _inputHash;
+    }
+
+    /** Return the number of output bytes written. */
+    long output() {
+        return _output;
+    }
+
+    /** Return the last settings line applied. */
+    String settings() {
+        return _settings;
+    }
+
+    /** Return the rotor settings, by slot. */
+    int[] rotors() {
+        return _rotors.clone();
+    }
+
+    /** Save me in FILE, replacing its contents atomically. */
+    void write(Path file) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("tag", _tag);
+        props.setProperty("input", Long.toString(_input));
+        props.setProperty("inputHash", Long.toString(_inputHash));
+        props.setProperty("output", Long.toString(_output));
+        props.setProperty("settings", _settings);
+        StringBuilder rotors = new StringBuilder();
+        for (int setting : _rotors) {
+            rotors.append(rotors.length() == 0 ? "" : " ").append(setting);
+        }
+        props.setProperty("rotors", rotors.toString());
+        Path dir = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, "checkpoint", ".tmp");
+        try {
+            try (Writer out =
+                 Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                props.store(out, null);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** Return the checkpoint saved in FILE for a machine with NUMROTORS
+     *  slots. */
+    static Checkpoint read(Path file, int numRotors) {
+        Properties props = new Properties();
+        try (Reader in = Files.newBufferedReader(file,
+                                                 StandardCharsets.UTF_8)) {
+            props.load(in);
+            String[] words = props.getProperty("rotors").split(" ");
+            int[] rotors = new int[words.length];
+            for (int j = 0; j < words.length; j += 1) {
+                rotors[j] = Integer.parseInt(words[j]);
+            }
+            Checkpoint result =
+                new Checkpoint(props.getProperty("tag"),
+                               Long.parseLong(props.getProperty("input")),
+                               Long.parseLong(props.getProperty("inputHash")),
+                               Long.parseLong(props.getProperty("output")),
+                               props.getProperty("settings"), rotors);
+            if (result._tag == null || result._settings == null
+                || result._input < 0 || result._output < 0
+                || rotors.length != numRotors) {
+                throw error("bad checkpoint file %s", file);
+            }
+            for (int setting : rotors) {
+                if (setting < 0) {
+                    throw error("bad checkpoint file %s", file);
+                }
+            }
+            return result;
+        } catch (IOException | RuntimeException excp) {
+            throw error("bad checkpoint file %s", file);
+        }
+    }
+
+    /** Number of input bytes, by default, between checkpoints. */
+    static final long DEFAULT_INTERVAL = 1L << 26;
+
+    /** Tag of my job. */
+    private final String _tag;
+    /** Bytes of input converted and of output written. */
+    private final long _input, _output;
+    /** CRC-32C of the input converted. */
+    private final long _inputHash;
+    /** Last settings line applied. */
+    private final String _settings;
+    /** Rotor settings by slot. */
+    private final int[] _rotors;
+}
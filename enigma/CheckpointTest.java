@@ -0,0 +1,229 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Checkpoint class and resuming
+ *  pipelines from checkpoints.
+ *  @author Jerome
+ */
+public class CheckpointTest {
+
+    /** Return a random input of many messages for navalMachine(4). */
+    private static String input() {
+        Random random = new Random(24);
+        StringBuilder result = new StringBuilder();
+        for (int m = 0; m < 40; m += 1) {
+            result.append(KEYS[random.nextInt(KEYS.length)]).append('\n');
+            for (int line = random.nextInt(6); line >= 0; line -= 1) {
+                for (int i = random.nextInt(120); i >= 0; i -= 1) {
+                    result.append(i % 7 == 3 ? ' '
+                                  : (char) ('A' + random.nextInt(26)));
+                }
+                result.append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Settings lines used by input(). */
+    private static final String[] KEYS = {
+        "* B Beta III II AXL (HQ) (EX)",
+        "* C Gamma I III KDV",
+    };
+
+    /** Return the conversion of INPUT by a pipeline that is never
+     *  stopped. */
+    private static String convert(String input) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Pipeline(navalMachine(4))
+            .process(Channels.newChannel(
+                         new ByteArrayInputStream(input.getBytes())),
+                     Channels.newChannel(out));
+        return out.toString();
+    }
+
+    /** Return a channel reading IN, which fails once it has read LIMIT
+     *  bytes, as if the job had been killed. */
+    private static ReadableByteChannel failing(FileChannel in, long limit) {
+        return new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                if (in.position() >= limit) {
+                    throw new IOException("killed");
+                }
+                int room = (int) Math.min(dst.remaining(),
+                                          limit - in.position());
+                ByteBuffer part = dst.slice();
+                part.limit(room);
+                int n = in.read(part);
+                if (n > 0) {
+                    dst.position(dst.position() + n);
+                }
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return in.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+
+    /** Check that a job converting INPUT, stopped after KILLAT input
+     *  bytes, and then resumed, with keystreams from CACHE if it is not
+     *  null, writes what an uninterrupted job would. */
+    private static void checkResume(String input, long killAt,
+                                    KeystreamCache cache)
+        throws IOException {
+        Path dir = Files.createTempDirectory("enigma-checkpoint");
+        Path inFile = dir.resolve("in"), outFile = dir.resolve("out"),
+            saved = dir.resolve("state");
+        try {
+            Files.write(inFile, input.getBytes());
+            Pipeline first = new Pipeline(navalMachine(4));
+            first.setCache(cache);
+            first.setCheckpoints(saved, 500, "tag");
+            try (FileChannel in = FileChannel.open(inFile);
+                 FileChannel out = FileChannel.open(
+                     outFile, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE)) {
+                first.process(failing(in, killAt), out);
+                fail("job was not stopped");
+            } catch (IOException excp) {
+                assertEquals("killed", excp.getMessage());
+            }
+            Checkpoint from = Checkpoint.read(saved, 4);
+            assertTrue(from.input() > 0 && from.input() <= killAt);
+            Files.write(outFile, "GARBAGE".getBytes(),
+                        StandardOpenOption.APPEND);
+
+            Pipeline second =
+                new Pipeline(navalMachine(4));
+            second.setCache(cache);
+            second.setCheckpoints(saved, 500, "tag");
+            try (FileChannel in = FileChannel.open(inFile);
+                 FileChannel out = FileChannel.open(
+                     outFile, StandardOpenOption.WRITE)) {
+                second.resume(in, out, from);
+            }
+            assertEquals(convert(input),
+                         new String(Files.readAllBytes(outFile)));
+            assertFalse(Files.exists(saved));
+        } finally {
+            for (Path path : new Path[] {inFile, outFile, saved, dir}) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Test
+    public void resumeTest() throws IOException {
+        String input = input();
+        for (long killAt : new long[] {700, 3001, input.length() / 2,
+                                       input.length() - 10}) {
+            checkResume(input, killAt, null);
+            checkResume(input, killAt, new KeystreamCache(2, 30));
+        }
+    }
+
+    @Test
+    public void fileTest() throws IOException {
+        Path file = Files.createTempFile("enigma", ".checkpoint");
+        try {
+            new Checkpoint("abc", 12, 56, 34, "* B Beta I II AAA (AB)",
+                           new int[] {0, 1, 2, 3}).write(file);
+            Checkpoint read = Checkpoint.read(file, 4);
+            assertEquals("abc", read.tag());
+            assertEquals(12, read.input());
+            assertEquals(56, read.inputHash());
+            assertEquals(34, read.output());
+            assertEquals("* B Beta I II AAA (AB)", read.settings());
+            assertArrayEquals(new int[] {0, 1, 2, 3}, read.rotors());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void badFileTest() throws IOException {
+        Path file = Files.createTempFile("enigma", ".checkpoint");
+        try {
+            Files.write(file, "input=3\n".getBytes());
+            Checkpoint.read(file, 4);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rotorCountTest() throws IOException {
+        Path file = Files.createTempFile("enigma", ".checkpoint");
+        try {
+            new Checkpoint("abc", 12, 56, 34, "* B Beta I II AAA (AB)",
+                           new int[] {0, 1, 2, 3}).write(file);
+            Checkpoint.read(file, 5);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void otherInputTest() throws IOException {
+        String input = input();
+        Path dir = Files.createTempDirectory("enigma-checkpoint");
+        Path inFile = dir.resolve("in"), outFile = dir.resolve("out"),
+            saved = dir.resolve("state");
+        try {
+            Files.write(inFile, input.getBytes());
+            Pipeline first = new Pipeline(navalMachine(4));
+            first.setCheckpoints(saved, 500, "tag");
+            try (FileChannel in = FileChannel.open(inFile);
+                 FileChannel out = FileChannel.open(
+                     outFile, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE)) {
+                first.process(failing(in, 3001), out);
+                fail("job was not stopped");
+            } catch (IOException excp) {
+                assertEquals("killed", excp.getMessage());
+            }
+            Checkpoint from = Checkpoint.read(saved, 4);
+            byte[] written = Files.readAllBytes(outFile);
+            Files.write(inFile, input.replace('A', 'B').getBytes());
+
+            Pipeline second = new Pipeline(navalMachine(4));
+            second.setCheckpoints(saved, 500, "tag");
+            try (FileChannel in = FileChannel.open(inFile);
+                 FileChannel out = FileChannel.open(
+                     outFile, StandardOpenOption.WRITE)) {
+                second.resume(in, out, from);
+                fail("resumed with another input");
+            } catch (EnigmaException excp) {
+                assertArrayEquals(written, Files.readAllBytes(outFile));
+            }
+        } finally {
+            for (Path path : new Path[] {inFile, outFile, saved, dir}) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
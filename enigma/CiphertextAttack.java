@@ -0,0 +1,360 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only attack.  Recovers the key of a long enough message
+ *  from the ciphertext alone, in two phases.
+ *
+ *  First, every rotor order (as for CribSearch) and setting is tried with
+ *  an empty plugboard, and the keys whose decryptions have the highest
+ *  index of coincidence (chance that two characters picked at random are
+ *  the same) are kept: text decrypted with the right rotors and a few
+ *  wrong plugs is much less random than with wrong rotors.
+ *
+ *  Second, for each key kept, the plugboard is recovered by hill-climbing
+ *  from several random starting plugboards: a plug is added, removed, or
+ *  moved whenever that improves the score of the decryption, first by
+ *  index of coincidence, then by n-gram log probability.  The rotors'
+ *  substitution at each position is computed once per climb, so that each
+ *  trial plugboard costs a few array lookups per character.  The
+ *  restarts are independent and run in parallel.
+ *  @author Jerome
+ */
+class CiphertextAttack {
+
+    /** An attack on messages from the rotors available to PROTOTYPE,
+     *  scoring decryptions with NGRAMS, on PARALLELISM threads. */
+    CiphertextAttack(Machine prototype, NgramTable ngrams, int parallelism) {
+        _prototype = prototype;
+        _ngrams = ngrams;
+        _parallelism = parallelism;
+        _size = prototype.alphabet().size();
+    }
+
+    /** Set the number of rotor keys kept after the first phase to KEEP. */
+    void setKeep(int keep) {
+        _keep = keep;
+    }
+
+    /** Set the number of plugboard climbs from each key to RESTARTS. */
+    void setRestarts(int restarts) {
+        _restarts = restarts;
+    }
+
+    /** Return the settings line ("* ROTORS SETTINGS PLUGBOARD") of the
+     *  most probable key for CIPHERTEXT.  If PROGRESS is not null, reports
+     *  progress on it about once a second. */
+    String attack(String ciphertext, PrintStream progress) {
+        Alphabet alpha = _prototype.alphabet();
+        int[] cipher = new int[ciphertext.length()];
+        for (int i = 0; i < cipher.length; i += 1) {
+            cipher[i] = alpha.toInt(ciphertext.charAt(i));
+        }
+        ThreadLocal<Machine> machines =
+            ThreadLocal.withInitial(() -> _prototype.copy());
+
+        ArrayList<Callable<List<Key>>> ranking = new ArrayList<>();
+        for (String[] order : CribSearch.rotorOrders(_prototype)) {
+            for (int first = 0; first < _size; first += 1) {
+                int slot1 = first;
+                ranking.add(() -> rank(machines.get(), order, slot1, cipher));
+            }
+        }
+        long perTask = CribSearch.power(_size, _prototype.numRotors() - 2);
+        _done.reset();
+        PriorityQueue<Key> best = new PriorityQueue<>(BY_SCORE);
+        for (List<Key> keys : run(ranking, ranking.size() * perTask,
+                                  "keys ranked", progress)) {
+            for (Key key : keys) {
+                keep(best, key, _keep);
+            }
+        }
+
+        ArrayList<Callable<List<Key>>> climbs = new ArrayList<>();
+        for (Key key : best) {
+            for (int r = 0; r < _restarts; r += 1) {
+                long seed = climbs.size();
+                climbs.add(() -> Collections.singletonList(
+                    climb(machines.get(), key, cipher, seed)));
+            }
+        }
+        _done.reset();
+        Key result = null;
+        for (List<Key> keys : run(climbs, climbs.size(), "climbs done",
+                                  progress)) {
+            Key key = keys.get(0);
+            if (result == null || key._score > result._score) {
+                result = key;
+            }
+        }
+        if (result == null) {
+            throw error("no rotor orders to try");
+        }
+        return result.settingsLine(_prototype);
+    }
+
+    /** Run TASKS on a fork-join pool, returning their results in order.
+     *  Each task adds the work it has done to _done, out of TOTAL, which
+     *  is reported as WHAT on PROGRESS, if it is not null. */
+    private List<List<Key>> run(List<Callable<List<Key>>> tasks, long total,
+                                String what, PrintStream progress) {
+        ForkJoinPool pool = new ForkJoinPool(_parallelism);
+        ArrayList<Future<List<Key>>> futures = new ArrayList<>();
+        ArrayList<List<Key>> result = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            for (Callable<List<Key>> task : tasks) {
+                futures.add(pool.submit(task));
+            }
+            pool.shutdown();
+            while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                if (progress != null) {
+                    long done = _done.sum();
+                    progress.printf("%,d of %,d %s (%.1f%%), %,.0f/s%n",
+                                    done, total, what, 100.0 * done / total,
+                                    done * 1e9 / (System.nanoTime() - start));
+                }
+            }
+            for (Future<List<Key>> future : futures) {
+                result.add(future.get());
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof EnigmaException) {
+                throw (EnigmaException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+        if (progress != null) {
+            progress.printf("%,d %s in %.1f s%n", total, what,
+                            (System.nanoTime() - start) / 1e9);
+        }
+        return result;
+    }
+
+    /** Return the best _keep keys, by index of coincidence of the
+     *  decryption of CIPHER with an empty plugboard, among those whose
+     *  rotors are ORDER and whose slot 1 setting is SLOT1, using
+     *  MACHINE. */
+    private List<Key> rank(Machine machine, String[] order, int slot1,
+                           int[] cipher) {
+        PriorityQueue<Key> best = new PriorityQueue<>(BY_SCORE);
+        int n = machine.numRotors();
+        machine.insertRotors(order);
+        machine.setPlugboard(new Permutation("", machine.alphabet()));
+        machine.setComposite(true);
+        int[] settings = new int[n];
+        settings[1] = slot1;
+        int[] counts = new int[_size];
+        long count = CribSearch.power(_size, n - 2);
+        for (long k = 0; k < count; k += 1) {
+            machine.setSettings(settings);
+            for (int c : cipher) {
+                counts[machine.convert(c)] += 1;
+            }
+            long coincidences = 0;
+            for (int x = 0; x < _size; x += 1) {
+                coincidences += (long) counts[x] * (counts[x] - 1);
+                counts[x] = 0;
+            }
+            if (best.size() < _keep || coincidences > best.peek()._score) {
+                keep(best, new Key(order, settings.clone(), null,
+                                   coincidences), _keep);
+            }
+            for (int j = n - 1; j > 1; j -= 1) {
+                settings[j] += 1;
+                if (settings[j] < _size) {
+                    break;
+                }
+                settings[j] = 0;
+            }
+        }
+        _done.add(count);
+        return new ArrayList<>(best);
+    }
+
+    /** Return KEY with the plugboard found by hill-climbing from a random
+     *  plugboard drawn using SEED (an empty one for seed 0), scored on the
+     *  decryption of CIPHER, using MACHINE. */
+    private Key climb(Machine machine, Key key, int[] cipher, long seed) {
+        machine.insertRotors(key._order);
+        machine.setPlugboard(new Permutation("", machine.alphabet()));
+        machine.setComposite(true);
+        machine.setSettings(key._settings);
+        int[] rotors = new int[cipher.length * _size];
+        for (int i = 0; i < cipher.length; i += 1) {
+            machine.step();
+            for (int x = 0; x < _size; x += 1) {
+                rotors[i * _size + x] = machine.substitute(x);
+            }
+        }
+
+        int[] plugs = new int[_size];
+        for (int x = 0; x < _size; x += 1) {
+            plugs[x] = x;
+        }
+        Random random = new Random(seed);
+        int numPlugs = seed == 0 ? 0 : random.nextInt(_size / 4 + 1);
+        for (int k = 0; k < numPlugs; k += 1) {
+            swap(plugs, random.nextInt(_size), random.nextInt(_size));
+        }
+        int[] text = new int[cipher.length];
+        climb(plugs, rotors, cipher, text, false);
+        double score = climb(plugs, rotors, cipher, text, true);
+        _done.add(1);
+        return new Key(key._order, key._settings, plugs, score);
+    }
+
+    /** Improve PLUGS, one plug at a time, until no single change improves
+     *  the score of the decryption of CIPHER, using the substitutions
+     *  ROTORS of the rotors at each position and TEXT as scratch space.
+     *  Scores by n-grams if NGRAMS, else by index of coincidence.  Returns
+     *  the final score. */
+    private double climb(int[] plugs, int[] rotors, int[] cipher, int[] text,
+                         boolean ngrams) {
+        int[] trial = new int[_size];
+        double best = score(plugs, rotors, cipher, text, ngrams);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int a = 0; a < _size; a += 1) {
+                for (int b = a + 1; b < _size; b += 1) {
+                    System.arraycopy(plugs, 0, trial, 0, _size);
+                    swap(trial, a, b);
+                    double score = score(trial, rotors, cipher, text, ngrams);
+                    if (score > best) {
+                        best = score;
+                        System.arraycopy(trial, 0, plugs, 0, _size);
+                        improved = true;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Return the score of the decryption of CIPHER with plugboard PLUGS,
+     *  given the substitutions ROTORS of the rotors at each position,
+     *  leaving the decryption in TEXT.  Scores by n-grams if NGRAMS, else
+     *  by index of coincidence. */
+    private double score(int[] plugs, int[] rotors, int[] cipher, int[] text,
+                         boolean ngrams) {
+        for (int i = 0; i < cipher.length; i += 1) {
+            text[i] = plugs[rotors[i * _size + plugs[cipher[i]]]];
+        }
+        if (ngrams) {
+            return _ngrams.score(text, text.length);
+        }
+        int[] counts = new int[_size];
+        for (int c : text) {
+            counts[c] += 1;
+        }
+        long coincidences = 0;
+        for (int count : counts) {
+            coincidences += (long) count * (count - 1);
+        }
+        return coincidences;
+    }
+
+    /** Change the plugboard PLUGS (an involution) so that A and B are
+     *  plugged together, unplugging them from any other characters, or,
+     *  if they are already plugged together, unplug them. */
+    private static void swap(int[] plugs, int a, int b) {
+        if (plugs[a] == b) {
+            plugs[a] = a;
+            plugs[b] = b;
+            return;
+        }
+        plugs[plugs[a]] = plugs[a];
+        plugs[plugs[b]] = plugs[b];
+        plugs[a] = b;
+        plugs[b] = a;
+    }
+
+    /** Add KEY to BEST, and then remove its worst keys until it has at
+     *  most LIMIT. */
+    private static void keep(PriorityQueue<Key> best, Key key, int limit) {
+        best.add(key);
+        while (best.size() > limit) {
+            best.poll();
+        }
+    }
+
+    /** A candidate key with its score. */
+    private static class Key {
+        /** A key with rotors ORDER at SETTINGS and plugboard PLUGS (null
+         *  if empty), with score SCORE. */
+        Key(String[] order, int[] settings, int[] plugs, double score) {
+            _order = order;
+            _settings = settings;
+            _plugs = plugs;
+            _score = score;
+        }
+
+        /** Return my settings line, in the alphabet of MACHINE. */
+        String settingsLine(Machine machine) {
+            Alphabet alpha = machine.alphabet();
+            StringBuilder line = new StringBuilder(
+                CribSearch.settingsLine(machine, _order, _settings));
+            for (int x = 0; _plugs != null && x < _plugs.length; x += 1) {
+                if (_plugs[x] > x) {
+                    line.append(" (").append(alpha.toChar(x))
+                        .append(alpha.toChar(_plugs[x])).append(')');
+                }
+            }
+            return line.toString();
+        }
+
+        /** Rotor names, by slot. */
+        private final String[] _order;
+        /** Rotor settings, by slot. */
+        private final int[] _settings;
+        /** Plugboard mapping, or null. */
+        private final int[] _plugs;
+        /** Score (larger is better). */
+        private final double _score;
+    }
+
+    /** Orders keys by increasing score. */
+    private static final Comparator<Key> BY_SCORE =
+        Comparator.comparingDouble(key -> key._score);
+
+    /** Default number of keys kept after ranking by index of coincidence. */
+    static final int KEEP = 100;
+    /** Default number of plugboard climbs per key kept. */
+    static final int RESTARTS = 4;
+
+    /** The machine whose rotors are searched. */
+    private final Machine _prototype;
+    /** Scores candidate plaintexts. */
+    private final NgramTable _ngrams;
+    /** Number of threads searching. */
+    private final int _parallelism;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Number of keys kept after ranking. */
+    private int _keep = KEEP;
+    /** Number of climbs per key kept. */
+    private int _restarts = RESTARTS;
+    /** Units of work done in the current phase. */
+    private final LongAdder _done = new LongAdder();
+}
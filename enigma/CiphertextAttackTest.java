@@ -0,0 +1,124 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CiphertextAttack and NgramTable
+ *  classes.
+ *  @author Jerome
+ */
+public class CiphertextAttackTest {
+
+    /** A sample of English for training n-gram tables. */
+    static final String CORPUS =
+        "It was the best of times, it was the worst of times, it was the "
+        + "age of wisdom, it was the age of foolishness, it was the epoch "
+        + "of belief, it was the epoch of incredulity, it was the season of "
+        + "light, it was the season of darkness, it was the spring of hope, "
+        + "it was the winter of despair, we had everything before us, we "
+        + "had nothing before us, we were all going direct to heaven, we "
+        + "were all going direct the other way. In short, the period was so "
+        + "far like the present period, that some of its noisiest "
+        + "authorities insisted on its being received, for good or for "
+        + "evil, in the superlative degree of comparison only. There were a "
+        + "king with a large jaw and a queen with a plain face, on the "
+        + "throne of England; there were a king with a large jaw and a queen "
+        + "with a fair face, on the throne of France. In both countries it "
+        + "was clearer than crystal to the lords of the State preserves of "
+        + "loaves and fishes, that things in general were settled for ever. "
+        + "It is a truth universally acknowledged, that a single man in "
+        + "possession of a good fortune, must be in want of a wife. However "
+        + "little known the feelings or views of such a man may be on his "
+        + "first entering a neighbourhood, this truth is so well fixed in "
+        + "the minds of the surrounding families, that he is considered as "
+        + "the rightful property of some one or other of their daughters. "
+        + "Call me Ishmael. Some years ago, never mind how long precisely, "
+        + "having little or no money in my purse, and nothing particular to "
+        + "interest me on shore, I thought I would sail about a little and "
+        + "see the watery part of the world. It is a way I have of driving "
+        + "off the spleen, and regulating the circulation. Whenever I find "
+        + "myself growing grim about the mouth; whenever it is a damp, "
+        + "drizzly November in my soul; whenever I find myself involuntarily "
+        + "pausing before coffin warehouses, and bringing up the rear of "
+        + "every funeral I meet; then, I account it high time to get to sea "
+        + "as soon as I can. This is my substitute for pistol and ball. "
+        + "There is nothing surprising in this. If they but knew it, almost "
+        + "all men in their degree, some time or other, cherish very nearly "
+        + "the same feelings towards the ocean with me.";
+
+    /** A message to be attacked. */
+    static final String MESSAGE =
+        "THE WEATHER OVER THE NORTHERN SEA WILL REMAIN POOR FOR THE NEXT "
+        + "THREE DAYS AND ALL SHIPS ARE ORDERED TO STAY IN PORT UNTIL THE "
+        + "STORM HAS PASSED. THE CONVOY THAT WAS EXPECTED ON MONDAY WILL NOW "
+        + "ARRIVE ON THURSDAY AT THE EARLIEST, AND THE HARBOUR MASTER ASKS "
+        + "THAT ALL CAPTAINS REPORT THEIR POSITION AND THE STATE OF THEIR "
+        + "FUEL AND SUPPLIES BEFORE NOON EACH DAY UNTIL FURTHER NOTICE";
+
+    /** Return MSG upper-cased, without characters not in UPPER. */
+    static String letters(String msg) {
+        StringBuilder result = new StringBuilder();
+        for (char ch : msg.toUpperCase().toCharArray()) {
+            if (UPPER.contains(ch)) {
+                result.append(ch);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return a three-slot machine, with two pawls, whose available rotors
+     *  are naval reflector B and moving rotors I, II, and III. */
+    static Machine machine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        String[][] moving = {{"I", "Q"}, {"II", "E"}, {"III", "V"}};
+        for (String[] rotor : moving) {
+            rotors.add(new MovingRotor(rotor[0],
+                                       new Permutation(NAVALA.get(rotor[0]),
+                                                       UPPER), rotor[1]));
+        }
+        return new Machine(UPPER, 3, 2, rotors);
+    }
+
+    @Test
+    public void ngramScoreTest() {
+        NgramTable table = new NgramTable(UPPER, 3, CORPUS);
+        assertEquals(3, table.order());
+        int[] english = new int[20], noise = new int[20];
+        String text = letters("the other man was there again");
+        for (int i = 0; i < 20; i += 1) {
+            english[i] = UPPER.toInt(text.charAt(i));
+            noise[i] = UPPER.toInt("QZXJKVQZXJKVQZXJKVQZ".charAt(i));
+        }
+        assertTrue(table.score(english, 20) > table.score(noise, 20));
+        assertEquals(0, table.score(english, 2), 0);
+        assertEquals(4, NgramTable.maxOrder(UPPER, 4));
+        StringBuilder wide = new StringBuilder();
+        for (int k = 0; k < 300; k += 1) {
+            wide.append((char) ('\u4e00' + k));
+        }
+        assertEquals(2, NgramTable.maxOrder(new Alphabet(wide.toString()), 4));
+    }
+
+    @Test
+    public void recoversKeyTest() {
+        String plugs = "(AT) (HM) (OR) (SW)";
+        Machine sender = machine();
+        sender.insertRotors(new String[] {"B", "III", "I"});
+        sender.setRotors("KW");
+        sender.setPlugboard(new Permutation(plugs, UPPER));
+        String cipher = sender.convert(letters(MESSAGE));
+
+        CiphertextAttack attack =
+            new CiphertextAttack(machine(), new NgramTable(UPPER, 4, CORPUS),
+                                 2);
+        attack.setKeep(20);
+        String key = attack.attack(cipher, null);
+        assertEquals("* B III I KW " + plugs, key);
+    }
+}
@@ -0,0 +1,105 @@
+package enigma;
+
+import java.util.NoSuchElementException;
+
+/** Reads the tokens of a configuration file as java.util.Scanner would,
+ *  with tokens separated by whitespace, for the few Scanner methods that
+ *  Main uses.  Scanner matches a regular expression for each token, and
+ *  so takes most of the time taken to read a configuration with many
+ *  rotors; this just walks the text.
+ *  @author Jerome
+ */
+class ConfigScanner {
+
+    /** A scanner reading TEXT. */
+    ConfigScanner(String text) {
+        _text = text;
+    }
+
+    /** Return true iff another token remains. */
+    boolean hasNext() {
+        skipBlanks();
+        return _pos < _text.length();
+    }
+
+    /** Return the next token, throwing NoSuchElementException if there
+     *  is none. */
+    String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int start = _pos;
+        while (_pos < _text.length()
+               && !Character.isWhitespace(_text.charAt(_pos))) {
+            _pos += 1;
+        }
+        return _text.substring(start, _pos);
+    }
+
+    /** Return true iff the next token is an int. */
+    boolean hasNextInt() {
+        int start = _pos;
+        try {
+            if (!hasNext()) {
+                return false;
+            }
+            Integer.parseInt(next());
+            return true;
+        } catch (NumberFormatException excp) {
+            return false;
+        } finally {
+            _pos = start;
+        }
+    }
+
+    /** Return the next token as an int, throwing NoSuchElementException
+     *  if there is none or it is not an int. */
+    int nextInt() {
+        int start = _pos;
+        try {
+            return Integer.parseInt(next());
+        } catch (NumberFormatException excp) {
+            _pos = start;
+            throw new NoSuchElementException();
+        }
+    }
+
+    /** Return the rest of the current line, and skip past its line
+     *  terminator, throwing NoSuchElementException at the end of the
+     *  text. */
+    String nextLine() {
+        if (_pos >= _text.length()) {
+            throw new NoSuchElementException();
+        }
+        int start = _pos;
+        while (_pos < _text.length() && !isLineEnd(_text.charAt(_pos))) {
+            _pos += 1;
+        }
+        String result = _text.substring(start, _pos);
+        if (_text.startsWith("\r\n", _pos)) {
+            _pos += 2;
+        } else if (_pos < _text.length()) {
+            _pos += 1;
+        }
+        return result;
+    }
+
+    /** Move past any whitespace. */
+    private void skipBlanks() {
+        while (_pos < _text.length()
+               && Character.isWhitespace(_text.charAt(_pos))) {
+            _pos += 1;
+        }
+    }
+
+    /** Return true iff CH ends a line. */
+    private static boolean isLineEnd(char ch) {
+        return ch == '\n' || ch == '\r' || ch == '\u0085'
+            || ch == '\u2028' || ch == '\u2029';
+    }
+
+    /** The text scanned. */
+    private final String _text;
+    /** Position of the next character to read. */
+    private int _pos;
+}
@@ -0,0 +1,426 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+/** A cache of compiled machine configurations.  Reading a configuration
+ *  file dominates the running time of short invocations of Main, so the
+ *  first time a configuration is read, the machine it describes is saved
+ *  in a binary snapshot, named by a digest of the configuration text.
+ *  Later runs with the same text map the snapshot into memory instead.
+ *  A rotor already built when the snapshot is saved is recorded as its
+ *  tables, which are read directly; any other is recorded as its
+ *  description (see RotorCatalog.Spec), so that saving a snapshot builds
+ *  no rotors, and the rotor's permutation is parsed only when it is first
+ *  inserted, as it would be from the text.  Any change to the text
+ *  changes the digest, so a stale snapshot is never used, and a new one
+ *  is made.  The directory is bounded in size: after each snapshot is
+ *  written, the least recently used others are deleted until the rest
+ *  fit.
+ *
+ *  A snapshot is trusted no more than the configuration it replaces, so
+ *  the directory holding them is created writable by its owner alone, and
+ *  a snapshot is read only if both it and the directory belong to the
+ *  user running Main and can be written by no one else.  Every snapshot
+ *  read is checked completely, and any that is damaged is ignored, so
+ *  that Main parses the configuration instead.
+ *
+ *  A snapshot holds, all big-endian: the magic number and format version;
+ *  the digest; the alphabet (length, then characters); the numbers of
+ *  slots, pawls, and available rotors; for each rotor, its kind ('R',
+ *  'N', or 'M', as in the configuration file), name (length, then
+ *  characters), and either 'S' followed by its cycles and notches (each
+ *  length, then characters) or 'T' followed by its permutation table (one
+ *  int per character) and notch bitmap (one bit per character); and the
+ *  CRC-32C of all that.
+ *  @author Jerome
+ */
+class ConfigSnapshot {
+
+    /** A cache of snapshots in directory DIR, which is created, usable
+     *  by its owner alone, if needed, and holds at most DEFAULT_CAPACITY
+     *  bytes of snapshots. */
+    ConfigSnapshot(Path dir) {
+        this(dir, DEFAULT_CAPACITY);
+    }
+
+    /** A cache of snapshots in directory DIR, as above, holding at most
+     *  CAPACITY bytes of snapshots, except that the one most recently
+     *  written is always kept. */
+    ConfigSnapshot(Path dir, long capacity) {
+        _dir = dir;
+        _capacity = capacity;
+    }
+
+    /** Return a SHA-256 digest of configuration text TEXT. */
+    static byte[] digest(byte[] text) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Return the machine saved for the configuration with digest DIGEST,
+     *  or null if there is no valid snapshot of it. */
+    Machine read(byte[] digest) {
+        Path file = path(digest);
+        try {
+            if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)
+                || !trusted(_dir) || !trusted(file)) {
+                return null;
+            }
+        } catch (IOException | RuntimeException excp) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file)) {
+            MappedByteBuffer buffer =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Machine result = decode(buffer, digest);
+            Files.setLastModifiedTime(
+                file, FileTime.fromMillis(System.currentTimeMillis()));
+            return result;
+        } catch (IOException | RuntimeException excp) {
+            return null;
+        }
+    }
+
+    /** Save MACHINE as the compiled form of the configuration with digest
+     *  DIGEST.  Failure to save (including a rotor whose notches are not
+     *  in the alphabet, which is reported only when the rotor is used) is
+     *  ignored: the configuration will just be parsed again next time. */
+    void write(byte[] digest, Machine machine) {
+        try {
+            if (posix()) {
+                Files.createDirectories(
+                    _dir, PosixFilePermissions.asFileAttribute(
+                              PosixFilePermissions.fromString("rwx------")));
+            } else {
+                Files.createDirectories(_dir);
+            }
+            if (!trusted(_dir)) {
+                return;
+            }
+            Path temp = Files.createTempFile(_dir, "snapshot", ".tmp");
+            try {
+                try (FileChannel channel =
+                     FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    ByteBuffer buffer = encode(machine, digest);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                Files.move(temp, path(digest),
+                           StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            prune(path(digest));
+        } catch (IOException | RuntimeException excp) {
+            return;
+        }
+    }
+
+    /** Delete the least recently used snapshots, other than KEEP, until
+     *  those left hold at most my capacity in bytes.  A snapshot's
+     *  modification time is the last time it was written or read. */
+    private void prune(Path keep) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> dir =
+             Files.newDirectoryStream(_dir, "*.bin")) {
+            for (Path file : dir) {
+                files.add(file);
+            }
+        }
+        HashMap<Path, BasicFileAttributes> attrs = new HashMap<>();
+        long total = 0;
+        for (Path file : files) {
+            BasicFileAttributes attr =
+                Files.readAttributes(file, BasicFileAttributes.class,
+                                     LinkOption.NOFOLLOW_LINKS);
+            attrs.put(file, attr);
+            total += attr.size();
+        }
+        files.sort(Comparator.comparing(
+                       f -> attrs.get(f).lastModifiedTime()));
+        for (Path file : files) {
+            if (total <= _capacity) {
+                break;
+            }
+            if (!file.equals(keep)) {
+                total -= attrs.get(file).size();
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /** Return true iff my directory's file system has POSIX file
+     *  permissions. */
+    private boolean posix() {
+        return _dir.getFileSystem().supportedFileAttributeViews()
+            .contains("posix");
+    }
+
+    /** Return true iff PATH, not following a symbolic link, belongs to the
+     *  user running this program and, where the file system has POSIX
+     *  permissions, can be written by its owner alone. */
+    private boolean trusted(Path path) throws IOException {
+        UserPrincipal user = _dir.getFileSystem()
+            .getUserPrincipalLookupService()
+            .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!Files.getOwner(path, LinkOption.NOFOLLOW_LINKS).equals(user)) {
+            return false;
+        }
+        if (!posix()) {
+            return true;
+        }
+        Set<PosixFilePermission> perms =
+            Files.getFileAttributeView(path, PosixFileAttributeView.class,
+                                       LinkOption.NOFOLLOW_LINKS)
+            .readAttributes().permissions();
+        return !perms.contains(PosixFilePermission.GROUP_WRITE)
+            && !perms.contains(PosixFilePermission.OTHERS_WRITE);
+    }
+
+    /** Return the snapshot file for digest DIGEST. */
+    private Path path(byte[] digest) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : digest) {
+            name.append(String.format("%02x", b));
+        }
+        return _dir.resolve(name.append(".bin").toString());
+    }
+
+    /** Return the snapshot of MACHINE, whose configuration has digest
+     *  DIGEST, ready to be written. */
+    private static ByteBuffer encode(Machine machine, byte[] digest) {
+        Alphabet alpha = machine.alphabet();
+        int size = alpha.size();
+        RotorCatalog catalog = machine.catalog();
+        List<String> names = catalog.names();
+        RotorCatalog.Spec[] specs = new RotorCatalog.Spec[names.size()];
+        Rotor[] rotors = new Rotor[names.size()];
+        int length = 4 * Integer.BYTES + digest.length + 2 * size
+            + 4 * Integer.BYTES;
+        for (int r = 0; r < rotors.length; r += 1) {
+            String name = names.get(r);
+            length += 2 + Integer.BYTES + 2 * name.length();
+            specs[r] = catalog.isBuilt(name) ? null : catalog.spec(name);
+            if (specs[r] != null) {
+                length += 2 * Integer.BYTES + 2 * specs[r].cycles().length()
+                    + 2 * specs[r].notches().length();
+            } else {
+                rotors[r] = catalog.get(name);
+                length += Integer.BYTES * size + (size + 7) / 8;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        buffer.putInt(digest.length).put(digest);
+        buffer.putInt(size);
+        for (int k = 0; k < size; k += 1) {
+            buffer.putChar(alpha.toChar(k));
+        }
+        buffer.putInt(machine.numRotors()).putInt(machine.numPawls());
+        buffer.putInt(rotors.length);
+        for (int r = 0; r < rotors.length; r += 1) {
+            Rotor rotor = rotors[r];
+            if (specs[r] != null) {
+                buffer.put((byte) specs[r].kind());
+                putString(buffer, names.get(r));
+                buffer.put((byte) 'S');
+                putString(buffer, specs[r].cycles());
+                putString(buffer, specs[r].notches());
+                continue;
+            }
+            buffer.put((byte) (rotor.reflecting() ? 'R'
+                               : rotor.rotates() ? 'M' : 'N'));
+            putString(buffer, rotor.name());
+            buffer.put((byte) 'T');
+            for (int k = 0; k < size; k += 1) {
+                buffer.putInt(rotor.permutation().permute(k));
+            }
+            byte[] notches = new byte[(size + 7) / 8];
+            for (int k = 0; k < size; k += 1) {
+                if (rotor.notchAt(k)) {
+                    notches[k >>> 3] |= 1 << (k & 7);
+                }
+            }
+            buffer.put(notches);
+        }
+        buffer.putInt(checksum(buffer, buffer.position()));
+        buffer.flip();
+        return buffer;
+    }
+
+    /** Return the machine in snapshot BUFFER, or null if it is not a
+     *  snapshot of the configuration with digest DIGEST in the current
+     *  format.  The whole snapshot is checked here, so that its rotors,
+     *  which are built only when first used, are sure to be valid.  May
+     *  throw a RuntimeException if BUFFER is corrupt. */
+    private static Machine decode(ByteBuffer buffer, byte[] digest) {
+        int end = buffer.limit() - Integer.BYTES;
+        if (end < 0 || buffer.getInt(end) != checksum(buffer, end)) {
+            return null;
+        }
+        buffer.limit(end);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        byte[] stored = new byte[length(buffer, 1)];
+        buffer.get(stored);
+        if (!Arrays.equals(stored, digest)) {
+            return null;
+        }
+        Alphabet alpha = new Alphabet(getString(buffer));
+        int size = alpha.size();
+        int numRotors = buffer.getInt(), pawls = buffer.getInt();
+        int count = length(buffer, 2 + 3 * Integer.BYTES);
+        if (numRotors < 1 || pawls < 0 || pawls >= numRotors) {
+            return null;
+        }
+        RotorCatalog rotors = new RotorCatalog(alpha);
+        for (int r = 0; r < count; r += 1) {
+            byte kind = buffer.get();
+            String name = getString(buffer);
+            byte form = buffer.get();
+            if (kind != 'R' && kind != 'N' && kind != 'M') {
+                return null;
+            } else if (form == 'S') {
+                String cycles = getString(buffer);
+                String notches = getString(buffer);
+                rotors.add(new RotorCatalog.Spec((char) kind, name, cycles,
+                                                 notches));
+                continue;
+            }
+            int tables = buffer.position();
+            if (form != 'T' || !validTables(buffer, size)) {
+                return null;
+            }
+            rotors.add(name, () -> rotor(buffer, tables, kind, name, alpha));
+        }
+        if (buffer.hasRemaining()) {
+            return null;
+        }
+        return new Machine(alpha, numRotors, pawls, rotors);
+    }
+
+    /** Return true iff the permutation table and notch bitmap of a rotor
+     *  over an alphabet of SIZE characters at the position of BUFFER are
+     *  valid, advancing past them. */
+    private static boolean validTables(ByteBuffer buffer, int size) {
+        boolean[] reached = new boolean[size];
+        for (int k = 0; k < size; k += 1) {
+            int c = buffer.getInt();
+            if (c < 0 || c >= size || reached[c]) {
+                return false;
+            }
+            reached[c] = true;
+        }
+        byte[] notches = new byte[(size + 7) / 8];
+        buffer.get(notches);
+        return size % 8 == 0
+            || (notches[notches.length - 1] & (-1 << (size % 8))) == 0;
+    }
+
+    /** Return the CRC-32C of the first END bytes of BUFFER. */
+    private static int checksum(ByteBuffer buffer, int end) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.position(0).limit(end);
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    /** Return the count at the position of BUFFER, checking that the
+     *  rest of BUFFER could hold that many items of at least SIZE bytes
+     *  each. */
+    private static int length(ByteBuffer buffer, int size) {
+        int result = buffer.getInt();
+        if (result < 0 || result > buffer.remaining() / size) {
+            throw new IllegalStateException("bad snapshot length");
+        }
+        return result;
+    }
+
+    /** Return a new rotor of kind KIND named NAME over ALPHA, whose
+     *  permutation table and notch bitmap start at index TABLES of
+     *  BUFFER. */
+    private static Rotor rotor(ByteBuffer buffer, int tables, byte kind,
+                               String name, Alphabet alpha) {
+        int size = alpha.size();
+        int[] table = new int[size];
+        for (int k = 0; k < size; k += 1) {
+            table[k] = buffer.getInt(tables + Integer.BYTES * k);
+        }
+        Permutation perm = new Permutation(table, alpha);
+        if (kind == 'R') {
+            return new Reflector(name, perm);
+        } else if (kind == 'N') {
+            return new FixedRotor(name, perm);
+        }
+        int notches = tables + Integer.BYTES * size;
+        StringBuilder notchChars = new StringBuilder();
+        for (int k = 0; k < size; k += 1) {
+            if ((buffer.get(notches + (k >>> 3)) & (1 << (k & 7))) != 0) {
+                notchChars.append(alpha.toChar(k));
+            }
+        }
+        return new MovingRotor(name, perm, notchChars.toString());
+    }
+
+    /** Append S to BUFFER as its length followed by its characters. */
+    private static void putString(ByteBuffer buffer, String s) {
+        buffer.putInt(s.length());
+        for (int k = 0; k < s.length(); k += 1) {
+            buffer.putChar(s.charAt(k));
+        }
+    }
+
+    /** Return the string at the position of BUFFER, as written by
+     *  putString. */
+    private static String getString(ByteBuffer buffer) {
+        char[] chars = new char[length(buffer, Character.BYTES)];
+        for (int k = 0; k < chars.length; k += 1) {
+            chars[k] = buffer.getChar();
+        }
+        return new String(chars);
+    }
+
+    /** First word of every snapshot ("ENIG"). */
+    private static final int MAGIC = 0x454e4947;
+    /** Version of the snapshot format. */
+    private static final int VERSION = 3;
+
+    /** Default bound on the total size of a directory of snapshots. */
+    static final long DEFAULT_CAPACITY = 64L << 20;
+
+    /** Directory holding snapshots. */
+    private final Path _dir;
+    /** Bound on the total size in bytes of the snapshots in _dir. */
+    private final long _capacity;
+}
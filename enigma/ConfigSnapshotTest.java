@@ -0,0 +1,167 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigSnapshot class.
+ *  @author Jerome
+ */
+public class ConfigSnapshotTest {
+
+    /** Settings line for the machines tested. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    @Test
+    public void roundTripTest() throws IOException {
+        Path dir = Files.createTempDirectory("snapshots");
+        ConfigSnapshot snapshots = new ConfigSnapshot(dir);
+        byte[] digest = ConfigSnapshot.digest("naval".getBytes());
+        assertNull(snapshots.read(digest));
+
+        Machine original = navalMachine(5);
+        snapshots.write(digest, original);
+        Machine loaded = snapshots.read(digest);
+        assertNotNull(loaded);
+        assertEquals(original.numRotors(), loaded.numRotors());
+        assertEquals(original.numPawls(), loaded.numPawls());
+        Main.setUp(loaded, SETTINGS);
+        Main.setUp(original, SETTINGS);
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOODMADEOF"
+            + "SLIDINGFOLDINGROSEWOOD";
+        assertEquals(original.convert(msg), loaded.convert(msg));
+
+        assertNull(snapshots.read(ConfigSnapshot.digest("other".getBytes())));
+    }
+
+    @Test
+    public void corruptSnapshotTest() throws IOException {
+        Path dir = Files.createTempDirectory("snapshots");
+        ConfigSnapshot snapshots = new ConfigSnapshot(dir);
+        byte[] digest = ConfigSnapshot.digest("naval".getBytes());
+        snapshots.write(digest, navalMachine(5));
+        try (Stream<Path> files = Files.list(dir)) {
+            Path file = files.findFirst().get();
+            byte[] bytes = Files.readAllBytes(file);
+            Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+        }
+        assertNull(snapshots.read(digest));
+    }
+
+    @Test
+    public void unbuiltRotorsTest() throws IOException {
+        Path dir = Files.createTempDirectory("snapshots");
+        ConfigSnapshot snapshots = new ConfigSnapshot(dir);
+        byte[] digest = ConfigSnapshot.digest("lazy".getBytes());
+        Machine original = lazyNavalMachine(5);
+        Main.setUp(original, SETTINGS);
+        snapshots.write(digest, original);
+        assertFalse(original.catalog().isBuilt("II"));
+        Machine loaded = snapshots.read(digest);
+        assertNotNull(loaded);
+        assertEquals("(AB) (C1)", loaded.catalog().spec("Broken").cycles());
+        assertTrue(loaded.catalog().spec("Beta") == null);
+        Main.setUp(loaded, SETTINGS);
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERA";
+        assertEquals(original.convert(msg), loaded.convert(msg));
+        Main.setUp(loaded, "* C Gamma II V VI AAAA");
+        try {
+            Main.setUp(loaded, "* C Broken II V VI AAAA");
+            fail("bad permutation accepted");
+        } catch (EnigmaException excp) {
+            return;
+        }
+    }
+
+    /** Return the only file in DIR. */
+    private static Path onlyFile(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.findFirst().get();
+        }
+    }
+
+    @Test
+    public void corruptTableTest() throws IOException {
+        Path dir = Files.createTempDirectory("snapshots");
+        ConfigSnapshot snapshots = new ConfigSnapshot(dir);
+        byte[] digest = ConfigSnapshot.digest("naval".getBytes());
+        snapshots.write(digest, navalMachine(5));
+        Path file = onlyFile(dir);
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+        int end = bytes.capacity() - Integer.BYTES;
+        int notchBytes = 4;
+        bytes.putInt(end - notchBytes - Integer.BYTES, 0);
+        CRC32C crc = new CRC32C();
+        crc.update(bytes.array(), 0, end);
+        bytes.putInt(end, (int) crc.getValue());
+        Files.write(file, bytes.array());
+        assertNull(snapshots.read(digest));
+    }
+
+    @Test
+    public void capacityTest() throws IOException {
+        Path dir = Files.createTempDirectory("snapshots");
+        byte[][] digests = new byte[4][];
+        for (int k = 0; k < digests.length; k += 1) {
+            digests[k] = ConfigSnapshot.digest(("naval" + k).getBytes());
+        }
+        new ConfigSnapshot(dir).write(digests[0], navalMachine(5));
+        long size = Files.size(onlyFile(dir));
+        ConfigSnapshot snapshots = new ConfigSnapshot(dir, 2 * size);
+        Files.setLastModifiedTime(onlyFile(dir), FileTime.fromMillis(0));
+        snapshots.write(digests[1], navalMachine(5));
+        Files.setLastModifiedTime(dir.resolve(fileName(digests[1])),
+                                  FileTime.fromMillis(1000));
+        assertNotNull(snapshots.read(digests[0]));
+        snapshots.write(digests[2], navalMachine(5));
+        assertNotNull(snapshots.read(digests[0]));
+        assertNull(snapshots.read(digests[1]));
+        assertNotNull(snapshots.read(digests[2]));
+
+        new ConfigSnapshot(dir, 0).write(digests[3], navalMachine(5));
+        assertEquals(dir.resolve(fileName(digests[3])), onlyFile(dir));
+    }
+
+    /** Return the name of the snapshot file for DIGEST. */
+    private static String fileName(byte[] digest) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : digest) {
+            name.append(String.format("%02x", b));
+        }
+        return name.append(".bin").toString();
+    }
+
+    @Test
+    public void untrustedTest() throws IOException {
+        Path dir = Files.createTempDirectory("snapshots");
+        if (!dir.getFileSystem().supportedFileAttributeViews()
+            .contains("posix")) {
+            return;
+        }
+        ConfigSnapshot snapshots = new ConfigSnapshot(dir);
+        byte[] digest = ConfigSnapshot.digest("naval".getBytes());
+        snapshots.write(digest, navalMachine(5));
+        assertNotNull(snapshots.read(digest));
+        Path file = onlyFile(dir);
+        Files.setPosixFilePermissions(
+            file, PosixFilePermissions.fromString("rw-rw-r--"));
+        assertNull(snapshots.read(digest));
+        Files.setPosixFilePermissions(
+            file, PosixFilePermissions.fromString("rw-------"));
+        Files.setPosixFilePermissions(
+            dir, PosixFilePermissions.fromString("rwxrwxrwx"));
+        assertNull(snapshots.read(digest));
+    }
+}
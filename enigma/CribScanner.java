@@ -0,0 +1,142 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Finds where cribs may lie in a ciphertext.  Since a machine whose
+ *  reflector has no fixed points never encrypts a character as itself, a
+ *  crib cannot be placed where any of its characters falls on the same
+ *  character of the ciphertext.  For each character of the alphabet, the
+ *  scanner indexes the ciphertext as a bitset of the positions holding
+ *  it.  The offsets ruled out by a crib are then the union, over its
+ *  characters, of the bitset of each shifted back by its position in the
+ *  crib, computed 64 offsets at a time.  The legal placements can be
+ *  handed to CribSearch or BombeSearch, or any other key search.
+ *  @author Jerome
+ */
+class CribScanner {
+
+    /** A scanner for texts in ALPHA. */
+    CribScanner(Alphabet alpha) {
+        _alphabet = alpha;
+    }
+
+    /** Return the offsets in CIPHERTEXT, in increasing order, at which
+     *  CRIB may be placed. */
+    int[] placements(String ciphertext, String crib) {
+        return placements(index(ciphertext), ciphertext.length(), crib);
+    }
+
+    /** Return a map from each of CRIBS, in order, to its placements in
+     *  CIPHERTEXT. */
+    Map<String, int[]> scan(String ciphertext, Collection<String> cribs) {
+        long[][] index = index(ciphertext);
+        LinkedHashMap<String, int[]> result = new LinkedHashMap<>();
+        for (String crib : cribs) {
+            result.put(crib, placements(index, ciphertext.length(), crib));
+        }
+        return result;
+    }
+
+    /** Return the results of scan(TEXT, CRIBS) for each TEXT in
+     *  CIPHERTEXTS, in order, scanning on PARALLELISM threads. */
+    List<Map<String, int[]>> scan(List<String> ciphertexts,
+                                  Collection<String> cribs,
+                                  int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        ArrayList<Future<Map<String, int[]>>> tasks = new ArrayList<>();
+        ArrayList<Map<String, int[]>> result = new ArrayList<>();
+        try {
+            for (String text : ciphertexts) {
+                tasks.add(pool.submit(() -> scan(text, cribs)));
+            }
+            for (Future<Map<String, int[]>> task : tasks) {
+                result.add(task.get());
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof EnigmaException) {
+                throw (EnigmaException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+        return result;
+    }
+
+    /** Return the index of TEXT: element C is a bitset of the positions in
+     *  TEXT of the character with index C, or null if there are none. */
+    long[][] index(String text) {
+        long[][] result = new long[_alphabet.size()][];
+        int words = (text.length() + Long.SIZE - 1) / Long.SIZE;
+        for (int i = 0; i < text.length(); i += 1) {
+            int c = _alphabet.toInt(text.charAt(i));
+            if (result[c] == null) {
+                result[c] = new long[words];
+            }
+            result[c][i >>> 6] |= 1L << i;
+        }
+        return result;
+    }
+
+    /** Return the offsets at which CRIB may be placed in a ciphertext of
+     *  LENGTH characters with index INDEX. */
+    int[] placements(long[][] index, int length, String crib) {
+        int last = length - crib.length();
+        if (last < 0) {
+            return new int[0];
+        }
+        long[] ruledOut = new long[(length + Long.SIZE - 1) / Long.SIZE];
+        for (int i = 0; i < crib.length(); i += 1) {
+            long[] bits = index[_alphabet.toInt(crib.charAt(i))];
+            if (bits != null) {
+                shiftOr(ruledOut, bits, i);
+            }
+        }
+        int[] result = new int[last + 1];
+        int count = 0;
+        for (int w = 0; w <= last >>> 6; w += 1) {
+            long open = ~ruledOut[w];
+            if (w == last >>> 6 && (last & 63) != 63) {
+                open &= (1L << ((last & 63) + 1)) - 1;
+            }
+            while (open != 0) {
+                result[count] =
+                    w * Long.SIZE + Long.numberOfTrailingZeros(open);
+                count += 1;
+                open &= open - 1;
+            }
+        }
+        int[] trimmed = new int[count];
+        System.arraycopy(result, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    /** Set DEST to DEST | (SRC >> SHIFT), treating each as one long bitset
+     *  with bit 0 the low bit of word 0. */
+    private static void shiftOr(long[] dest, long[] src, int shift) {
+        int words = shift >>> 6, bits = shift & 63;
+        for (int w = 0; w + words < src.length; w += 1) {
+            long word = src[w + words] >>> bits;
+            if (bits != 0 && w + words + 1 < src.length) {
+                word |= src[w + words + 1] << (Long.SIZE - bits);
+            }
+            dest[w] |= word;
+        }
+    }
+
+    /** The alphabet of ciphertexts and cribs. */
+    private final Alphabet _alphabet;
+}
@@ -0,0 +1,86 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CribScanner class.
+ *  @author Jerome
+ */
+public class CribScannerTest {
+
+    /** Return the placements of CRIB in TEXT, found the slow way. */
+    private int[] slowPlacements(String text, String crib) {
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int p = 0; p + crib.length() <= text.length(); p += 1) {
+            boolean ok = true;
+            for (int i = 0; i < crib.length(); i += 1) {
+                ok &= text.charAt(p + i) != crib.charAt(i);
+            }
+            if (ok) {
+                result.add(p);
+            }
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Return a random string of LENGTH characters from CHARS. */
+    private String random(Random random, String chars, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            result.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void smallTest() {
+        CribScanner scanner = new CribScanner(UPPER);
+        assertArrayEquals(new int[] {0},
+                          scanner.placements("ABCABD", "BAD"));
+        assertArrayEquals(new int[] {0, 1, 3},
+                          scanner.placements("ABCABD", "CD"));
+        assertArrayEquals(new int[0], scanner.placements("AB", "ABC"));
+        assertArrayEquals(new int[] {0, 1, 2, 3},
+                          scanner.placements("XYZ", ""));
+    }
+
+    @Test
+    public void matchesSlowScanTest() {
+        Random random = new Random(7);
+        CribScanner scanner = new CribScanner(new Alphabet("ABCD"));
+        for (int trial = 0; trial < 200; trial += 1) {
+            String text = random(random, "ABCD", random.nextInt(300));
+            String crib = random(random, "ABCD", 1 + random.nextInt(8));
+            assertArrayEquals(text + " " + crib, slowPlacements(text, crib),
+                              scanner.placements(text, crib));
+        }
+    }
+
+    @Test
+    public void parallelScanTest() {
+        Random random = new Random(3);
+        List<String> texts = new ArrayList<>();
+        for (int k = 0; k < 20; k += 1) {
+            texts.add(random(random, UPPER_STRING, 1000 + k * 97));
+        }
+        List<String> cribs = Arrays.asList("WETTERBERICHT", "KEINE", "OKW");
+        List<Map<String, int[]>> results =
+            new CribScanner(UPPER).scan(texts, cribs, 4);
+        assertEquals(texts.size(), results.size());
+        for (int k = 0; k < texts.size(); k += 1) {
+            assertEquals(cribs, new ArrayList<>(results.get(k).keySet()));
+            for (String crib : cribs) {
+                assertArrayEquals(slowPlacements(texts.get(k), crib),
+                                  results.get(k).get(crib));
+            }
+        }
+    }
+}
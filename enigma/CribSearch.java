@@ -0,0 +1,284 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext key search.  Given a ciphertext and a crib (a guess at
+ *  part of its plaintext), finds every choice of rotors from a machine's
+ *  available rotors, and every setting of them, under which the machine
+ *  converts the crib into the corresponding part of the ciphertext.  The
+ *  plugboard is taken as known.
+ *
+ *  A rotor order puts a reflector in slot 0, non-moving rotors in the
+ *  slots without pawls, and moving rotors in the numPawls() rightmost
+ *  slots.  The search space (rotor orders times settings) is cut into one
+ *  task per rotor order and setting of slot 1, run on a fork-join pool,
+ *  each thread with its own copy of the machine.  A candidate is rejected
+ *  at the first crib character it gets wrong, which for all but a tiny
+ *  fraction of candidates is the first or second.
+ *  @author Jerome
+ */
+class CribSearch {
+
+    /** A search using the rotors available to PROTOTYPE and the plugboard
+     *  PLUGBOARD, on PARALLELISM threads. */
+    CribSearch(Machine prototype, Permutation plugboard, int parallelism) {
+        _prototype = prototype;
+        _plugboard = plugboard;
+        _parallelism = parallelism;
+    }
+
+    /** Return the settings lines ("* REFLECTOR ROTOR ... SETTINGS", without
+     *  plugboard) of every key that converts CRIB into the characters of
+     *  CIPHERTEXT starting at OFFSET, the settings being those at the start
+     *  of CIPHERTEXT.  Keys are returned in rotor order, in the order
+     *  the rotors are listed in the configuration, then by setting.  If
+     *  PROGRESS is not null, reports progress and the rate of search on it
+     *  about once a second. */
+    List<String> search(String ciphertext, String crib, int offset,
+                        PrintStream progress) {
+        Alphabet alpha = _prototype.alphabet();
+        if (offset < 0 || offset + crib.length() > ciphertext.length()) {
+            throw error("crib does not fit in the ciphertext");
+        }
+        int[] plain = new int[crib.length()];
+        int[] cipher = new int[crib.length()];
+        for (int i = 0; i < plain.length; i += 1) {
+            plain[i] = alpha.toInt(crib.charAt(i));
+            cipher[i] = alpha.toInt(ciphertext.charAt(offset + i));
+        }
+        ArrayList<String[]> orders = rotorOrders(_prototype);
+        int size = alpha.size();
+        _total = orders.size() * power(size, _prototype.numRotors() - 1);
+        _tested.reset();
+        ArrayList<String> result = new ArrayList<>();
+        if (!possible(plain, cipher)) {
+            return result;
+        }
+
+        ThreadLocal<Machine> machines = ThreadLocal.withInitial(() -> {
+            Machine machine = _prototype.copy();
+            machine.setComposite(false);
+            return machine;
+        });
+        ForkJoinPool pool = new ForkJoinPool(_parallelism);
+        ArrayList<Future<List<String>>> tasks = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            for (String[] order : orders) {
+                for (int first = 0; first < size; first += 1) {
+                    int slot1 = first;
+                    tasks.add(pool.submit(() ->
+                        searchTask(machines.get(), order, slot1,
+                                   plain, cipher, offset)));
+                }
+            }
+            pool.shutdown();
+            while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                if (progress != null) {
+                    report(progress, start, false);
+                }
+            }
+            for (Future<List<String>> task : tasks) {
+                result.addAll(task.get());
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof EnigmaException) {
+                throw (EnigmaException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+        _found = result.size();
+        if (progress != null) {
+            report(progress, start, true);
+        }
+        return result;
+    }
+
+    /** Return the number of keys in the last search space. */
+    long total() {
+        return _total;
+    }
+
+    /** Return the number of keys tried so far in the last search. */
+    long tested() {
+        return _tested.sum();
+    }
+
+    /** Return the keys found among those whose rotors are ORDER and whose
+     *  slot 1 setting is SLOT1, using MACHINE, where PLAIN, CIPHER, and
+     *  OFFSET are as for search. */
+    private List<String> searchTask(Machine machine, String[] order,
+                                    int slot1, int[] plain, int[] cipher,
+                                    int offset) {
+        ArrayList<String> result = new ArrayList<>();
+        int n = machine.numRotors();
+        int size = machine.alphabet().size();
+        machine.insertRotors(order);
+        machine.setPlugboard(_plugboard);
+        int[] settings = new int[n];
+        settings[1] = slot1;
+        long count = power(size, n - 2);
+        for (long k = 0; k < count; k += 1) {
+            machine.setSettings(settings);
+            if (offset > 0) {
+                machine.skip(offset);
+            }
+            if (matches(machine, plain, cipher)) {
+                result.add(settingsLine(machine, order, settings));
+            }
+            for (int j = n - 1; j > 1; j -= 1) {
+                settings[j] += 1;
+                if (settings[j] < size) {
+                    break;
+                }
+                settings[j] = 0;
+            }
+        }
+        _tested.add(count);
+        return result;
+    }
+
+    /** Return true iff MACHINE converts PLAIN into CIPHER, stopping at the
+     *  first difference. */
+    private static boolean matches(Machine machine, int[] plain,
+                                   int[] cipher) {
+        for (int i = 0; i < plain.length; i += 1) {
+            if (machine.convert(plain[i]) != cipher[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return false if no key can convert PLAIN into CIPHER: some
+     *  character would have to encrypt to itself, and no available
+     *  reflector has a fixed point. */
+    private boolean possible(int[] plain, int[] cipher) {
+        for (Rotor rotor : _prototype.availableRotors()) {
+            if (rotor.reflecting() && !rotor.permutation().derangement()) {
+                return true;
+            }
+        }
+        for (int i = 0; i < plain.length; i += 1) {
+            if (plain[i] == cipher[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return every assignment of MACHINE's available rotors to its slots
+     *  allowed by its slots and pawls (see class comment). */
+    static ArrayList<String[]> rotorOrders(Machine machine) {
+        ArrayList<String> reflectors = new ArrayList<>();
+        ArrayList<String> fixed = new ArrayList<>();
+        ArrayList<String> moving = new ArrayList<>();
+        for (Rotor rotor : machine.availableRotors()) {
+            if (rotor.reflecting()) {
+                reflectors.add(rotor.name());
+            } else if (rotor.rotates()) {
+                moving.add(rotor.name());
+            } else {
+                fixed.add(rotor.name());
+            }
+        }
+        int n = machine.numRotors();
+        int pawls = machine.numPawls();
+        ArrayList<String[]> result = new ArrayList<>();
+        for (String reflector : reflectors) {
+            String[] order = new String[n];
+            order[0] = reflector;
+            fill(order, 1, n - pawls, fixed, moving, result);
+        }
+        return result;
+    }
+
+    /** Add to RESULT every completion of ORDER, whose slots before K are
+     *  filled, taking distinct rotors from FIXED for the slots before
+     *  LIMIT and from MOVING for the rest. */
+    private static void fill(String[] order, int k, int limit,
+                             List<String> fixed, List<String> moving,
+                             List<String[]> result) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        for (String name : k < limit ? fixed : moving) {
+            boolean used = false;
+            for (int j = 1; j < k; j += 1) {
+                used |= order[j].equals(name);
+            }
+            if (!used) {
+                order[k] = name;
+                fill(order, k + 1, limit, fixed, moving, result);
+            }
+        }
+    }
+
+    /** Return the settings line for a machine with rotors ORDER and
+     *  SETTINGS, using MACHINE's alphabet. */
+    static String settingsLine(Machine machine, String[] order,
+                                       int[] settings) {
+        StringBuilder line = new StringBuilder("*");
+        for (String name : order) {
+            line.append(' ').append(name);
+        }
+        line.append(' ');
+        for (int j = 1; j < settings.length; j += 1) {
+            line.append(machine.alphabet().toChar(settings[j]));
+        }
+        return line.toString();
+    }
+
+    /** Print the progress of a search begun at time START (as given by
+     *  System.nanoTime) on OUT.  DONE indicates the search is over. */
+    private void report(PrintStream out, long start, boolean done) {
+        double secs = (System.nanoTime() - start) / 1e9;
+        long tested = tested();
+        if (done) {
+            out.printf("searched %,d keys in %.1f s (%,.0f keys/s): "
+                       + "%d found%n", tested, secs, tested / secs, _found);
+        } else {
+            out.printf("searched %,d of %,d keys (%.1f%%), %,.0f keys/s%n",
+                       tested, _total, 100.0 * tested / _total,
+                       tested / secs);
+        }
+    }
+
+    /** Return BASE to the power EXP. */
+    static long power(int base, int exp) {
+        long result = 1;
+        for (int k = 0; k < exp; k += 1) {
+            result *= base;
+        }
+        return result;
+    }
+
+    /** The machine whose configuration is searched. */
+    private final Machine _prototype;
+    /** The plugboard assumed for every key. */
+    private final Permutation _plugboard;
+    /** Number of threads searching. */
+    private final int _parallelism;
+    /** Number of keys tried so far. */
+    private final LongAdder _tested = new LongAdder();
+    /** Size of the current search space. */
+    private long _total;
+    /** Number of keys found by the last search. */
+    private int _found;
+}
@@ -0,0 +1,76 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CribSearch class.
+ *  @author Jerome
+ */
+public class CribSearchTest {
+
+    /** The rotors available to the machines searched: naval reflectors
+     *  B and C, fixed rotors Beta and Gamma, and moving rotors I, II, and
+     *  III. */
+    private static final String[] AVAILABLE = {
+        "B", "C", "Beta", "Gamma", "I", "II", "III"
+    };
+
+    /** Return the encryption of MSG on navalMachine(4, AVAILABLE), with
+     *  ROTORS at SETTING and PLUGBOARD. */
+    static String encrypt(String[] rotors, String setting, String plugboard,
+                          String msg) {
+        Machine machine = navalMachine(4, AVAILABLE);
+        machine.insertRotors(rotors);
+        machine.setRotors(setting);
+        machine.setPlugboard(new Permutation(plugboard, UPPER));
+        return machine.convert(msg);
+    }
+
+    @Test
+    public void findsKeyTest() {
+        String plain = "WETTERVORHERSAGEBISKAYAHEUTEKLAR";
+        String cipher = encrypt(new String[] {"C", "Gamma", "II", "III"},
+                                "KPU", "", plain);
+        CribSearch search =
+            new CribSearch(navalMachine(4, AVAILABLE),
+                           new Permutation("", UPPER), 2);
+        List<String> keys = search.search(cipher, "VORHERSAGE", 6, null);
+        assertTrue(keys.contains("* C Gamma II III KPU"));
+        assertEquals(2 * 2 * 6 * 26 * 26 * 26, search.total());
+        assertEquals(search.total(), search.tested());
+        for (String key : keys) {
+            String[] parts = key.split(" ");
+            String[] rotors = {parts[1], parts[2], parts[3], parts[4]};
+            assertEquals(cipher.substring(6, 16),
+                         encrypt(rotors, parts[5], "",
+                                 plain.substring(0, 16)).substring(6));
+        }
+    }
+
+    @Test
+    public void plugboardTest() {
+        String plain = "ANGRIFFUMNULLUHRDREISSIG";
+        String plugs = "(AZ) (RT) (GK)";
+        String cipher = encrypt(new String[] {"B", "Beta", "III", "I"},
+                                "QEV", plugs, plain);
+        CribSearch search =
+            new CribSearch(navalMachine(4, AVAILABLE),
+                           new Permutation(plugs, UPPER), 1);
+        List<String> keys = search.search(cipher, plain, 0, null);
+        assertEquals(1, keys.size());
+        assertEquals("* B Beta III I QEV", keys.get(0));
+    }
+
+    @Test
+    public void selfEncryptionTest() {
+        CribSearch search =
+            new CribSearch(navalMachine(4, AVAILABLE),
+                           new Permutation("", UPPER), 1);
+        assertTrue(search.search("XAXXX", "BA", 0, null).isEmpty());
+        assertEquals(0, search.tested());
+    }
+}
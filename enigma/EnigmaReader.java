@@ -0,0 +1,109 @@
+package enigma;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/** A reader that converts the characters read from another reader with
+ *  an Enigma machine, a buffer at a time, so that encryption can sit
+ *  anywhere in a chain of readers.  Characters outside the machine's
+ *  alphabet, and grouping, are dealt with as described in
+ *  StreamConverter.  The machine's rotors advance as characters are
+ *  read from the underlying reader, which may be ahead of the characters
+ *  read from this one.
+ *  @author Jerome
+ */
+class EnigmaReader extends FilterReader {
+
+    /** A reader converting IN with MACHINE, which must have its rotors set
+     *  up, treating other characters according to POLICY and grouping
+     *  converted characters by GROUP (0 for no grouping). */
+    EnigmaReader(Reader in, Machine machine, StreamConverter.Policy policy,
+                 int group) {
+        super(in);
+        _converter = new StreamConverter(machine, policy, group);
+        _output = new char[_converter.maxOutput(_input.length)];
+    }
+
+    /** A reader converting IN with MACHINE, passing other characters
+     *  through and not grouping. */
+    EnigmaReader(Reader in, Machine machine) {
+        this(in, machine, StreamConverter.Policy.KEEP, 0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        char[] one = new char[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0];
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > cbuf.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        while (_start == _end) {
+            int n = in.read(_input, 0, _input.length);
+            if (n < 0) {
+                return -1;
+            }
+            _start = 0;
+            _end = _converter.convert(_input, 0, n, _output, 0);
+        }
+        int count = Math.min(len, _end - _start);
+        System.arraycopy(_output, _start, cbuf, off, count);
+        _start += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n < 0) {
+            throw new IllegalArgumentException("negative skip");
+        }
+        char[] discard = new char[(int) Math.min(n, _input.length)];
+        long skipped = 0;
+        while (skipped < n) {
+            int count = read(discard, 0,
+                             (int) Math.min(n - skipped, discard.length));
+            if (count < 0) {
+                break;
+            }
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return _start < _end || in.ready();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset not supported");
+    }
+
+    /** Converts characters. */
+    private final StreamConverter _converter;
+    /** Characters read from the underlying reader. */
+    private final char[] _input = new char[Pipeline.BUFFER_SIZE];
+    /** Converted characters, of which _output[_start .. _end-1] have not
+     *  yet been read. */
+    private final char[] _output;
+    /** Bounds of the unread part of _output. */
+    private int _start, _end;
+}
@@ -0,0 +1,117 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaReader, EnigmaWriter, and
+ *  StreamConverter classes.
+ *  @author Jerome
+ */
+public class EnigmaReaderTest {
+
+    /** Settings used for all tests. */
+    private static final String SETTINGS = "* B Beta III II AXL (HQ) (EX)";
+
+    /** Return a machine set up with SETTINGS. */
+    private static Machine machine() {
+        Machine machine = navalMachine(4);
+        Main.setUp(machine, SETTINGS);
+        return machine;
+    }
+
+    /** Return the conversion of the letters of MSG by a new machine(). */
+    private static String letters(String msg) {
+        return machine().convert(msg.replaceAll("[^A-Z]", ""));
+    }
+
+    /** Return all that can be read from IN. */
+    private static String readAll(Reader in) throws IOException {
+        StringBuilder result = new StringBuilder();
+        char[] buf = new char[7];
+        for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+            result.append(buf, 0, n);
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void keepTest() throws IOException {
+        String msg = "HELLO, WORLD!\nFROM BLETCHLEY";
+        String expected = letters(msg);
+        StringBuilder kept = new StringBuilder();
+        for (int i = 0, k = 0; i < msg.length(); i += 1) {
+            char ch = msg.charAt(i);
+            kept.append(ch >= 'A' && ch <= 'Z' ? expected.charAt(k++) : ch);
+        }
+        assertEquals(kept.toString(),
+                     readAll(new EnigmaReader(new StringReader(msg),
+                                              machine())));
+        StringWriter out = new StringWriter();
+        try (EnigmaWriter writer = new EnigmaWriter(out, machine())) {
+            writer.write(msg, 0, 3);
+            writer.write(msg.charAt(3));
+            writer.write(msg.substring(4).toCharArray());
+        }
+        assertEquals(kept.toString(), out.toString());
+    }
+
+    @Test
+    public void dropAndGroupTest() throws IOException {
+        String msg = "HELLO, WORLD FROM\nBLETCHLEY PARK";
+        String first = letters(msg);
+        String expected = first.substring(0, 5) + " " + first.substring(5, 10)
+            + " " + first.substring(10, 14) + "\n" + first.substring(14, 19)
+            + " " + first.substring(19, 24) + " " + first.substring(24);
+        assertEquals(expected,
+                     readAll(new EnigmaReader(new StringReader(msg),
+                                              machine(),
+                                              StreamConverter.Policy.DROP,
+                                              5)));
+        StringWriter out = new StringWriter();
+        try (EnigmaWriter writer =
+             new EnigmaWriter(out, machine(), StreamConverter.Policy.DROP,
+                              5)) {
+            for (char ch : msg.toCharArray()) {
+                writer.write(ch);
+            }
+        }
+        assertEquals(expected, out.toString());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rejectTest() throws IOException {
+        readAll(new EnigmaReader(new StringReader("HELLO WORLD"), machine(),
+                                 StreamConverter.Policy.REJECT, 0));
+    }
+
+    @Test
+    public void longTextTest() throws IOException {
+        Random random = new Random(18);
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 3 * Pipeline.BUFFER_SIZE + 17; i += 1) {
+            msg.append(random.nextInt(10) == 0 ? ' '
+                       : (char) ('A' + random.nextInt(26)));
+        }
+        String expected = letters(msg.toString());
+        EnigmaReader reader =
+            new EnigmaReader(new StringReader(msg.toString()), machine(),
+                             StreamConverter.Policy.DROP, 0);
+        assertEquals(3, reader.skip(3));
+        assertEquals(expected.substring(3), readAll(reader));
+        StringWriter out = new StringWriter();
+        try (EnigmaWriter writer =
+             new EnigmaWriter(out, machine(), StreamConverter.Policy.DROP,
+                              0)) {
+            writer.write(msg.toString());
+        }
+        assertEquals(expected, out.toString());
+    }
+}
@@ -0,0 +1,272 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running encryption service on a local socket, so that clients
+ *  pay for starting a JVM and reading the configuration only once.
+ *
+ *  The protocol is line-oriented text in UTF-8, and follows the input
+ *  files of Main: a line whose first non-blank character is '*' is a
+ *  settings line, which sets up a new session for the connection, and
+ *  every other line is a message, converted, in upper case, with the
+ *  current session, which carries on from where the last message on the
+ *  connection stopped.  Settings lines get
+ *  no reply; each message line gets one line: the conversion, with
+ *  whitespace removed, in groups of five, or "Error: " and a description
+ *  of what was wrong with the message or the settings line before it,
+ *  so a client always gets exactly one reply per message.  A line longer
+ *  than MAX_LINE characters is not read into memory: it gets an "Error: "
+ *  reply whatever it is, and if it was a settings line, later messages
+ *  get errors until the next one.  A connection may carry any number of
+ *  requests, and replies are flushed whenever the client has nothing
+ *  more waiting to be read, so requests may be pipelined.
+ *
+ *  Each connection is served on its own thread: a virtual thread where
+ *  the JVM has them, and otherwise a pooled platform thread.  All
+ *  connections share one immutable MachineDefinition.
+ *  @author Jerome
+ */
+class EnigmaServer implements Closeable {
+
+    /** A server for machines like DEFINITION, listening on PORT of the
+     *  loopback interface (any free port if PORT is 0). */
+    EnigmaServer(MachineDefinition definition, int port) throws IOException {
+        _definition = definition;
+        _socket = new ServerSocket(port, BACKLOG,
+                                   InetAddress.getLoopbackAddress());
+    }
+
+    /** Return the port on which I listen. */
+    int port() {
+        return _socket.getLocalPort();
+    }
+
+    /** Return the number of messages converted so far. */
+    long served() {
+        return _served.sum();
+    }
+
+    /** Accept and serve connections until closed. */
+    void serve() throws IOException {
+        try {
+            while (true) {
+                Socket client;
+                try {
+                    client = _socket.accept();
+                } catch (SocketException excp) {
+                    if (_socket.isClosed()) {
+                        return;
+                    }
+                    throw excp;
+                }
+                _connections.execute(() -> handle(client));
+            }
+        } finally {
+            _connections.shutdown();
+        }
+    }
+
+    /** Stop accepting connections, and wait briefly for those open to be
+     *  closed by their clients. */
+    @Override
+    public void close() throws IOException {
+        _socket.close();
+        _connections.shutdown();
+        try {
+            _connections.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Return an executor running each task on a new virtual thread if
+     *  this JVM has them (Java 21 and later), and otherwise on a cached
+     *  pool of platform threads.  The factory method is looked up
+     *  reflectively so that the code still compiles for older JVMs. */
+    static ExecutorService connectionExecutor() {
+        try {
+            Method factory =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException excp) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "enigma-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Serve requests from CLIENT until it closes its connection. */
+    private void handle(Socket client) {
+        try (Socket socket = client;
+             BufferedReader in = new BufferedReader(
+                 new InputStreamReader(socket.getInputStream(),
+                                       StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(
+                 new OutputStreamWriter(socket.getOutputStream(),
+                                        StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            Session session = null;
+            String problem = "no settings line";
+            LineReader lines = new LineReader(in);
+            for (String line = lines.next(); line != null;
+                 line = lines.next()) {
+                boolean settings = SettingsLine.isSettings(line);
+                if (line.length() > MAX_LINE) {
+                    if (settings) {
+                        session = null;
+                        problem = "settings line too long";
+                    }
+                    reply(out, in, "Error: line longer than " + MAX_LINE
+                          + " characters");
+                } else if (settings) {
+                    try {
+                        session = _definition.session(line);
+                    } catch (EnigmaException excp) {
+                        session = null;
+                        problem = excp.getMessage();
+                    }
+                } else if (session == null) {
+                    reply(out, in, "Error: " + problem);
+                } else {
+                    try {
+                        String result = convert(session, line);
+                        _served.increment();
+                        reply(out, in, result);
+                    } catch (EnigmaException excp) {
+                        reply(out, in, "Error: " + excp.getMessage());
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Return the conversion of message LINE by SESSION, as Main would
+     *  write it. */
+    private String convert(Session session, String line) {
+        Alphabet alpha = _definition.alphabet();
+        char[] chars = new char[line.length()];
+        int len = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char ch = line.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                continue;
+            }
+            ch = Pipeline.messageChar(ch);
+            if (!alpha.contains(ch)) {
+                throw error("character %c not in alphabet", ch);
+            }
+            chars[len] = ch;
+            len += 1;
+        }
+        session.convert(chars, 0, len, chars, 0);
+        StringBuilder result = new StringBuilder(len + len / Pipeline.GROUP);
+        for (int i = 0; i < len; i += Pipeline.GROUP) {
+            if (i > 0) {
+                result.append(' ');
+            }
+            result.append(chars, i, Math.min(Pipeline.GROUP, len - i));
+        }
+        return result.toString();
+    }
+
+    /** Write REPLY as a line to OUT, flushing it unless IN already holds
+     *  more of the client's requests. */
+    private static void reply(Writer out, BufferedReader in, String reply)
+        throws IOException {
+        out.write(reply);
+        out.write('\n');
+        if (!in.ready()) {
+            out.flush();
+        }
+    }
+
+    /** Reads the lines of a request stream, as BufferedReader.readLine
+     *  does, except that it keeps at most MAX_LINE + 1 characters of each
+     *  line, so that an endless line cannot exhaust the server's memory. */
+    private static final class LineReader {
+
+        /** A reader of the lines of IN. */
+        LineReader(BufferedReader in) {
+            _in = in;
+        }
+
+        /** Return the next line, without its terminator, or null at the
+         *  end of the stream.  A line longer than MAX_LINE characters is
+         *  returned cut to MAX_LINE + 1. */
+        String next() throws IOException {
+            int ch = _in.read();
+            if (ch == '\n' && _skipLF) {
+                ch = _in.read();
+            }
+            if (ch < 0) {
+                return null;
+            }
+            _line.setLength(0);
+            while (ch >= 0 && ch != '\n' && ch != '\r') {
+                if (_line.length() <= MAX_LINE) {
+                    _line.append((char) ch);
+                }
+                ch = _in.read();
+            }
+            _skipLF = false;
+            if (ch == '\r') {
+                if (_in.ready()) {
+                    _in.mark(1);
+                    if (_in.read() != '\n') {
+                        _in.reset();
+                    }
+                } else {
+                    _skipLF = true;
+                }
+            }
+            return _line.toString();
+        }
+
+        /** The stream read. */
+        private final BufferedReader _in;
+        /** The line being read. */
+        private final StringBuilder _line = new StringBuilder();
+        /** True iff the last line ended with a carriage return not yet
+         *  followed by anything, so that a line feed arriving next is part
+         *  of the same terminator.  A line feed already waiting is skipped
+         *  at once, so that it does not hold back the reply's flush. */
+        private boolean _skipLF;
+    }
+
+    /** Maximum length of a request line, in characters. */
+    static final int MAX_LINE = 1 << 20;
+
+    /** Maximum number of connections waiting to be accepted. */
+    private static final int BACKLOG = 1024;
+
+    /** The machine served. */
+    private final MachineDefinition _definition;
+    /** The listening socket. */
+    private final ServerSocket _socket;
+    /** Runs one task per connection. */
+    private final ExecutorService _connections = connectionExecutor();
+    /** Number of messages converted. */
+    private final LongAdder _served = new LongAdder();
+}
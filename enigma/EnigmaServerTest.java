@@ -0,0 +1,152 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaServer and LoadClient
+ *  classes.
+ *  @author Jerome
+ */
+public class EnigmaServerTest {
+
+    /** Return a server for navalMachine(4) on a free port, serving on a
+     *  new thread. */
+    private static EnigmaServer start() throws IOException {
+        EnigmaServer server = new EnigmaServer(
+            new MachineDefinition(navalMachine(4)), 0);
+        Thread thread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException excp) {
+                throw new RuntimeException(excp);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+
+    @Test
+    public void conversationTest() throws IOException {
+        try (EnigmaServer server = start();
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        server.port());
+             BufferedReader in = new BufferedReader(
+                 new InputStreamReader(socket.getInputStream(),
+                                       StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(),
+                                                 StandardCharsets.UTF_8)) {
+            String settings = "* B Beta III II AXL (HQ) (EX)";
+            out.write("HELLO\n" + settings + "\nHELLO WORLD\nAGAIN\n"
+                      + "* B Beta III IX AAA\nHELLO\n" + settings
+                      + "\nHELLO 1\n");
+            out.flush();
+            Machine machine = navalMachine(4);
+            Main.setUp(machine, settings);
+            String first = machine.convert("HELLOWORLD");
+            String second = machine.convert("AGAIN");
+
+            assertEquals("Error: no settings line", in.readLine());
+            assertEquals(first.substring(0, 5) + " " + first.substring(5),
+                         in.readLine());
+            assertEquals(second, in.readLine());
+            assertTrue(in.readLine().startsWith("Error: "));
+            assertTrue(in.readLine().startsWith("Error: "));
+            assertEquals(2, server.served());
+        }
+    }
+
+    @Test
+    public void caseAndIndentTest() throws IOException {
+        try (EnigmaServer server = start();
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        server.port());
+             BufferedReader in = new BufferedReader(
+                 new InputStreamReader(socket.getInputStream(),
+                                       StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(),
+                                                 StandardCharsets.UTF_8)) {
+            String settings = "* B Beta III II AXL (HQ) (EX)";
+            out.write("  " + settings + "\nhello world\n\t"
+                      + settings + "\nHello World\n");
+            out.flush();
+            Machine machine = navalMachine(4);
+            Main.setUp(machine, settings);
+            String expected = machine.convert("HELLOWORLD");
+            expected = expected.substring(0, 5) + " " + expected.substring(5);
+
+            assertEquals(expected, in.readLine());
+            assertEquals(expected, in.readLine());
+            assertEquals(2, server.served());
+        }
+    }
+
+    @Test
+    public void longLineTest() throws IOException {
+        try (EnigmaServer server = start();
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        server.port());
+             BufferedReader in = new BufferedReader(
+                 new InputStreamReader(socket.getInputStream(),
+                                       StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(),
+                                                 StandardCharsets.UTF_8)) {
+            char[] endless = new char[EnigmaServer.MAX_LINE + 10];
+            Arrays.fill(endless, 'A');
+            String settings = "* B Beta III II AXL (HQ) (EX)";
+            out.write(settings + "\r\n");
+            out.write(endless);
+            out.write("\r\nHELLO\r\n* ");
+            out.write(endless);
+            out.write("\nHELLO\n");
+            out.flush();
+            Machine machine = navalMachine(4);
+            Main.setUp(machine, settings);
+
+            assertTrue(in.readLine().startsWith("Error: "));
+            assertEquals(machine.convert("HELLO"), in.readLine());
+            assertTrue(in.readLine().startsWith("Error: "));
+            assertEquals("Error: settings line too long", in.readLine());
+            assertEquals(1, server.served());
+        }
+    }
+
+    @Test
+    public void loadTest() throws IOException {
+        try (EnigmaServer server = start()) {
+            String settings = "* C Gamma I III KDV (AQ)";
+            Machine machine = navalMachine(4);
+            Main.setUp(machine, settings);
+            String expected = machine.convert("ATTACKATDAWN");
+            List<String> replies = new LoadClient(server.port(), 8)
+                .run(settings, "ATTACKATDAWN", 50);
+            assertEquals(50, replies.size());
+            for (String reply : replies) {
+                assertEquals("ATTAC KATDA WN".length(), reply.length());
+                assertEquals(expected, reply.replace(" ", ""));
+            }
+            assertEquals(8 * 50, server.served());
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void loadErrorTest() throws IOException {
+        try (EnigmaServer server = start()) {
+            new LoadClient(server.port(), 2)
+                .run("* B Beta III II AAA", "ATTACK1", 5);
+        }
+    }
+}
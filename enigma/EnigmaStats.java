@@ -0,0 +1,183 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/** Counters showing where an encryption job spends its time: characters
+ *  converted, settings lines applied, rotor advances by slot, and the
+ *  time taken by each Stage.  A Machine given one counts its rotor
+ *  advances, and a Pipeline whose machine has one counts the rest, so
+ *  that one instance set on the prototype machine of a parallel or batch
+ *  job collects the counts of all its threads.  Counters are LongAdders,
+ *  so threads do not contend for them.  Machines count rotor advances in
+ *  plain fields of their own, added here after each batch of characters,
+ *  and nothing is counted or timed at all by machines without one.
+ *  Times are summed over threads, and so may exceed the time elapsed.
+ *  @author Jerome
+ */
+class EnigmaStats implements EnigmaStatsMBean {
+
+    /** The stages of a job whose time is measured. */
+    enum Stage {
+        /** Reading the configuration. */
+        PARSE,
+        /** Applying settings lines. */
+        SETUP,
+        /** Converting message characters. */
+        CONVERT,
+        /** Grouping and writing converted characters. */
+        OUTPUT
+    }
+
+    /** Counters for a machine with NUMROTORS slots. */
+    EnigmaStats(int numRotors) {
+        _advances = new LongAdder[numRotors];
+        for (int j = 0; j < numRotors; j += 1) {
+            _advances[j] = new LongAdder();
+        }
+        for (Stage stage : Stage.values()) {
+            _nanos[stage.ordinal()] = new LongAdder();
+        }
+    }
+
+    /** Record the conversion of N characters. */
+    void converted(long n) {
+        _characters.add(n);
+    }
+
+    /** Record that a settings line was applied. */
+    void settingsReset() {
+        _resets.increment();
+    }
+
+    /** Record COUNTS[J] advances of the rotor in each slot J. */
+    void advanced(long[] counts) {
+        for (int j = 0; j < _advances.length; j += 1) {
+            if (counts[j] != 0) {
+                _advances[j].add(counts[j]);
+            }
+        }
+    }
+
+    /** Record NANOS nanoseconds spent in STAGE. */
+    void time(Stage stage, long nanos) {
+        _nanos[stage.ordinal()].add(nanos);
+    }
+
+    /** Return the time spent in STAGE, in nanoseconds. */
+    long nanos(Stage stage) {
+        return _nanos[stage.ordinal()].sum();
+    }
+
+    @Override
+    public long getCharacters() {
+        return _characters.sum();
+    }
+
+    @Override
+    public long getSettingsResets() {
+        return _resets.sum();
+    }
+
+    @Override
+    public long[] getRotorAdvances() {
+        long[] result = new long[_advances.length];
+        for (int j = 0; j < result.length; j += 1) {
+            result[j] = _advances[j].sum();
+        }
+        return result;
+    }
+
+    @Override
+    public long getParseNanos() {
+        return nanos(Stage.PARSE);
+    }
+
+    @Override
+    public long getSetupNanos() {
+        return nanos(Stage.SETUP);
+    }
+
+    @Override
+    public long getConvertNanos() {
+        return nanos(Stage.CONVERT);
+    }
+
+    @Override
+    public long getOutputNanos() {
+        return nanos(Stage.OUTPUT);
+    }
+
+    /** Register me with the platform MBean server under NAME, replacing
+     *  whatever was registered there.  Starting the server takes a few
+     *  hundred milliseconds, so this is best done by registerLater. */
+    void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException excp) {
+            throw error("could not register statistics: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** Register me as for register on a daemon thread, so that the job
+     *  need not wait for the MBean server to start.  Reports failure on
+     *  the standard error. */
+    void registerLater() {
+        Thread thread = new Thread(() -> {
+            try {
+                register();
+            } catch (EnigmaException excp) {
+                System.err.printf("Warning: %s%n", excp.getMessage());
+            }
+        }, "enigma-stats");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Print my counters on OUT, for a job that took ELAPSED
+     *  nanoseconds in all. */
+    void report(PrintStream out, long elapsed) {
+        long chars = getCharacters();
+        out.printf("stats: %,d characters, %,d settings lines, "
+                   + "%,.0f chars/s%n", chars, getSettingsResets(),
+                   chars / Math.max(elapsed / 1e9, 1e-9));
+        StringBuilder advances = new StringBuilder();
+        long[] counts = getRotorAdvances();
+        for (int j = 1; j < counts.length; j += 1) {
+            advances.append(String.format(" %d:%,d", j, counts[j]));
+        }
+        out.printf("stats: rotor advances by slot:%s%n", advances);
+        StringBuilder times = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            times.append(String.format(" %s %.1f ms,",
+                                       stage.name().toLowerCase(),
+                                       nanos(stage) / 1e6));
+        }
+        out.printf("stats: time:%s total %.1f ms%n", times,
+                   elapsed / 1e6);
+    }
+
+    /** Name under which statistics are registered. */
+    static final String NAME = "enigma:type=Stats";
+
+    /** Number of message characters converted. */
+    private final LongAdder _characters = new LongAdder();
+    /** Number of settings lines applied. */
+    private final LongAdder _resets = new LongAdder();
+    /** Number of advances of the rotor in each slot. */
+    private final LongAdder[] _advances;
+    /** Time spent in each stage, by ordinal. */
+    private final LongAdder[] _nanos = new LongAdder[Stage.values().length];
+}
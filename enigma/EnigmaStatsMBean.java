@@ -0,0 +1,32 @@
+package enigma;
+
+/** The management interface of EnigmaStats, through which its counters
+ *  can be watched with any JMX client (such as jconsole) while a job
+ *  runs.  Times are totals in nanoseconds.  (JMX requires that this
+ *  interface be public.)
+ *  @author Jerome
+ */
+public interface EnigmaStatsMBean {
+
+    /** Return the number of message characters converted. */
+    long getCharacters();
+
+    /** Return the number of settings lines applied. */
+    long getSettingsResets();
+
+    /** Return the number of times the rotor in each slot has advanced,
+     *  indexed by slot. */
+    long[] getRotorAdvances();
+
+    /** Return the time spent reading the configuration. */
+    long getParseNanos();
+
+    /** Return the time spent applying settings lines. */
+    long getSetupNanos();
+
+    /** Return the time spent converting message characters. */
+    long getConvertNanos();
+
+    /** Return the time spent grouping and writing converted characters. */
+    long getOutputNanos();
+}
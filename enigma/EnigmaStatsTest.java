@@ -0,0 +1,179 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaStats class.
+ *  @author Jerome
+ */
+public class EnigmaStatsTest {
+
+    /** Input with two messages, of 40 and 12 characters. */
+    private static final String INPUT =
+        "* B Beta III II AAV (HQ)\nHELLO WORLD HELLO WORLD HELLO WORLD "
+        + "HELLO WORLD\n* C Gamma I III KDV\nATTACK AT DAWN\n";
+
+    /** Return the output of a pipeline converting INPUT with MACHINE. */
+    private static String process(Machine machine) throws IOException {
+        return process(machine, null);
+    }
+
+    /** Return the output of a pipeline converting INPUT with MACHINE,
+     *  using keystreams from CACHE (none if null). */
+    private static String process(Machine machine, KeystreamCache cache)
+        throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Pipeline pipeline = new Pipeline(machine);
+        pipeline.setCache(cache);
+        pipeline.process(
+            Channels.newChannel(new ByteArrayInputStream(INPUT.getBytes())),
+            Channels.newChannel(out));
+        return out.toString();
+    }
+
+    @Test
+    public void countersTest() throws IOException {
+        Machine machine = navalMachine(4);
+        String expected = process(machine);
+        EnigmaStats stats = new EnigmaStats(machine.numRotors());
+        machine.setStats(stats);
+        assertEquals(expected, process(machine));
+        assertEquals(52, stats.getCharacters());
+        assertEquals(2, stats.getSettingsResets());
+        long[] advances = stats.getRotorAdvances();
+        assertEquals(0, advances[0]);
+        assertEquals(0, advances[1]);
+        assertEquals(52, advances[3]);
+        assertTrue(advances[2] >= 2);
+        assertTrue(stats.getConvertNanos() > 0);
+        assertTrue(stats.getSetupNanos() > 0);
+
+        Machine copy = machine.copy();
+        process(copy);
+        assertEquals(104, stats.getCharacters());
+        assertEquals(104, stats.getRotorAdvances()[3]);
+    }
+
+    @Test
+    public void cacheTest() throws IOException {
+        Machine machine = navalMachine(4);
+        EnigmaStats plain = new EnigmaStats(machine.numRotors());
+        machine.setStats(plain);
+        String expected = process(machine);
+
+        KeystreamCache cache = new KeystreamCache(4, 30);
+        for (int run = 1; run <= 2; run += 1) {
+            EnigmaStats stats = new EnigmaStats(machine.numRotors());
+            machine.setStats(stats);
+            assertEquals(expected, process(machine, cache));
+            assertEquals(52, stats.getCharacters());
+            assertArrayEquals(plain.getRotorAdvances(),
+                              stats.getRotorAdvances());
+        }
+        assertEquals(2, cache.hits());
+    }
+
+    @Test
+    public void doubleStepTest() {
+        Machine machine =
+            new Machine(UPPER, 5, 4, navalMachine(5).availableRotors());
+        Main.setUp(machine, "* B I II III IV QDVI");
+        EnigmaStats stats = new EnigmaStats(machine.numRotors());
+        machine.setStats(stats);
+        long[] expected = new long[machine.numRotors()];
+        for (int i = 0; i < 20000; i += 1) {
+            int[] before = machine.settingsAfter(0);
+            machine.convert(i % 26);
+            int[] after = machine.settingsAfter(0);
+            for (int k = 1; k < after.length; k += 1) {
+                expected[k] += before[k] != after[k] ? 1 : 0;
+            }
+        }
+        machine.flushStats();
+        assertArrayEquals(expected, stats.getRotorAdvances());
+    }
+
+    /** Return the counters of STATS as reported by --stats, without the
+     *  times. */
+    private static String report(EnigmaStats stats) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stats.report(new PrintStream(out, true), 1_000_000_000L);
+        String[] lines = out.toString().split("\\R");
+        return lines[0] + "\n" + lines[1];
+    }
+
+    @Test
+    public void parallelTest() throws IOException {
+        String[] settings = {
+            "* B Beta III II AAV (HQ)", "* C Gamma I III KDV",
+            "* B Gamma II I QEV", "* C Beta I II AXL (AB)",
+            "* B Beta I III ZZZ", "* C Gamma III II PQR",
+        };
+        StringBuilder input = new StringBuilder();
+        for (String line : settings) {
+            input.append(line).append('\n');
+            int lines = line == settings[2] ? 100000 : 3;
+            for (int k = 0; k < lines; k += 1) {
+                input.append("HELLO WORLD ATTACK AT DAWN\n");
+            }
+        }
+        byte[] bytes = input.toString().getBytes();
+        assertTrue(bytes.length > 2 * ParallelPipeline.CHUNK_SIZE);
+
+        String[] reports = new String[2];
+        for (int threads = 1; threads <= 2; threads += 1) {
+            Machine machine = navalMachine(4);
+            EnigmaStats stats = new EnigmaStats(machine.numRotors());
+            machine.setStats(stats);
+            KeystreamCache cache = new KeystreamCache(8, 30);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (threads == 1) {
+                Pipeline pipeline = new Pipeline(machine);
+                pipeline.setCache(cache);
+                pipeline.process(
+                    Channels.newChannel(new ByteArrayInputStream(bytes)),
+                    Channels.newChannel(out));
+            } else {
+                ParallelPipeline pipeline =
+                    new ParallelPipeline(machine, threads);
+                pipeline.setCache(cache);
+                pipeline.process(
+                    Channels.newChannel(new ByteArrayInputStream(bytes)),
+                    Channels.newChannel(out));
+            }
+            reports[threads - 1] = report(stats);
+            assertEquals(0, cache.hits());
+            assertEquals(settings.length, cache.misses());
+        }
+        assertTrue(reports[0].contains(" 6 settings lines"));
+        assertEquals(reports[0], reports[1]);
+    }
+
+    @Test
+    public void mbeanTest() throws JMException {
+        EnigmaStats stats = new EnigmaStats(4);
+        stats.converted(17);
+        stats.advanced(new long[] {0, 1, 2, 17});
+        stats.register();
+        ObjectName name = new ObjectName(EnigmaStats.NAME);
+        assertEquals(17L, ManagementFactory.getPlatformMBeanServer()
+                     .getAttribute(name, "Characters"));
+        assertArrayEquals(new long[] {0, 1, 2, 17},
+                          (long[]) ManagementFactory.getPlatformMBeanServer()
+                          .getAttribute(name, "RotorAdvances"));
+        new EnigmaStats(4).register();
+        assertEquals(0L, ManagementFactory.getPlatformMBeanServer()
+                     .getAttribute(name, "Characters"));
+    }
+}
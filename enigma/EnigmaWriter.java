@@ -0,0 +1,69 @@
+package enigma;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/** A writer that converts the characters written to it with an Enigma
+ *  machine and passes them on to another writer, a buffer at a time, so
+ *  that encryption can sit anywhere in a chain of writers.  Characters
+ *  outside the machine's alphabet, and grouping, are dealt with as
+ *  described in StreamConverter.  The machine's rotors advance as
+ *  characters are written.
+ *  @author Jerome
+ */
+class EnigmaWriter extends FilterWriter {
+
+    /** A writer converting to OUT with MACHINE, which must have its rotors
+     *  set up, treating other characters according to POLICY and grouping
+     *  converted characters by GROUP (0 for no grouping). */
+    EnigmaWriter(Writer out, Machine machine, StreamConverter.Policy policy,
+                 int group) {
+        super(out);
+        _converter = new StreamConverter(machine, policy, group);
+        _output = new char[_converter.maxOutput(_input.length)];
+    }
+
+    /** A writer converting to OUT with MACHINE, passing other characters
+     *  through and not grouping. */
+    EnigmaWriter(Writer out, Machine machine) {
+        this(out, machine, StreamConverter.Policy.KEEP, 0);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        write(new char[] {(char) c}, 0, 1);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > cbuf.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = off; i < off + len; i += _input.length) {
+            int n = Math.min(_input.length, off + len - i);
+            int count = _converter.convert(cbuf, i, n, _output, 0);
+            out.write(_output, 0, count);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > str.length()) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = off; i < off + len; i += _input.length) {
+            int n = Math.min(_input.length, off + len - i);
+            str.getChars(i, i + n, _input, 0);
+            int count = _converter.convert(_input, 0, n, _output, 0);
+            out.write(_output, 0, count);
+        }
+    }
+
+    /** Converts characters. */
+    private final StreamConverter _converter;
+    /** Characters of strings being written. */
+    private final char[] _input = new char[Pipeline.BUFFER_SIZE];
+    /** Converted characters. */
+    private final char[] _output;
+}
@@ -13,6 +13,13 @@ class FixedRotor extends Rotor {
         super(name, perm);
     }
 
+    @Override
+    Rotor copy() {
+        Rotor result = new FixedRotor(name(), permutation());
+        result.set(setting());
+        return result;
+    }
+
     /** Fixed rotors don't advance. */
     @Override
     void advance() {
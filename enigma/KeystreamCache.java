@@ -0,0 +1,234 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A cache of keystreams for settings lines used over and over, as when
+ *  a day's traffic is all sent with a few daily keys.  For each settings
+ *  line, it holds the rotors and plugboard it selects, and the complete
+ *  substitution made at each of the first few keypresses after it (as in
+ *  PrecomputedMachine), so that setting up a machine again with the same
+ *  line needs neither parsing it nor building its plugboard, and the
+ *  start of each message is converted by table lookup alone.
+ *
+ *  Settings lines are compared with runs of whitespace treated as single
+ *  blanks.  The cache holds at most a fixed number of keystreams,
+ *  evicting the least recently used.  It is safe to share among threads,
+ *  each setting up its own copy of the machine.  Computing a keystream
+ *  costs about as much as converting alphabet-size times as many
+ *  characters as it covers, so the cache pays only for settings that
+ *  are each used for many messages.
+ *  @author Jerome
+ */
+class KeystreamCache {
+
+    /** A cache of at most CAPACITY keystreams, each covering LENGTH
+     *  keypresses. */
+    KeystreamCache(int capacity, int length) {
+        if (capacity < 1 || length < 1) {
+            throw new IllegalArgumentException("empty cache");
+        }
+        _length = length;
+        _entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Keystream> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Set up MACHINE according to SETTINGS, as Main.setUp does, and return
+     *  the keystream for SETTINGS, computing it if it is not cached. */
+    Keystream setUp(Machine machine, String settings) {
+        return setUp(machine, settings, true);
+    }
+
+    /** Set up MACHINE according to SETTINGS and return its keystream, as
+     *  for setUp(MACHINE, SETTINGS), counting the lookup in hits() or
+     *  misses() iff COUNTED. */
+    Keystream setUp(Machine machine, String settings, boolean counted) {
+        String key = normalize(settings);
+        Keystream result;
+        synchronized (_entries) {
+            result = _entries.get(key);
+        }
+        if (result != null) {
+            if (counted) {
+                _hits.increment();
+            }
+            result.apply(machine);
+            return result;
+        }
+        if (counted) {
+            _misses.increment();
+        }
+        Main.setUp(machine, settings);
+        result = new Keystream(machine, _length);
+        synchronized (_entries) {
+            _entries.put(key, result);
+        }
+        return result;
+    }
+
+    /** Return the number of setUp calls that found their keystream
+     *  cached. */
+    long hits() {
+        return _hits.sum();
+    }
+
+    /** Return the number of setUp calls that computed their keystream. */
+    long misses() {
+        return _misses.sum();
+    }
+
+    /** Return the number of keystreams cached. */
+    int size() {
+        synchronized (_entries) {
+            return _entries.size();
+        }
+    }
+
+    /** Return SETTINGS with leading and trailing whitespace removed and
+     *  each other run of whitespace replaced by one blank. */
+    static String normalize(String settings) {
+        StringBuilder result = new StringBuilder(settings.length());
+        boolean blank = false;
+        for (int i = 0; i < settings.length(); i += 1) {
+            char ch = settings.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                blank = result.length() > 0;
+            } else {
+                if (blank) {
+                    result.append(' ');
+                    blank = false;
+                }
+                result.append(ch);
+            }
+        }
+        return result.toString();
+    }
+
+    /** The machine state selected by one settings line, and the
+     *  substitutions made at its first keypresses.  Immutable. */
+    static final class Keystream {
+
+        /** The keystream of MACHINE, which has just been set up, for its
+         *  next LENGTH keypresses.  MACHINE is left as it was, and the
+         *  keypresses made to compute the keystream are not counted in
+         *  its statistics. */
+        Keystream(Machine machine, int length) {
+            Rotor[] slots = machine.getRotorList();
+            _rotors = new String[slots.length];
+            for (int j = 0; j < slots.length; j += 1) {
+                _rotors[j] = slots[j].name();
+            }
+            _plugboard = machine.plugboard();
+            _alphabet = machine.alphabet();
+            int size = _alphabet.size();
+            _start = machine.settingsAfter(0);
+            _table = new char[length * size];
+            _advances = new int[(length + 1) * slots.length];
+            EnigmaStats stats = machine.stats();
+            machine.flushStats();
+            machine.setStats(null);
+            int[] before = new int[slots.length];
+            for (int i = 0; i < length; i += 1) {
+                int row = (i + 1) * slots.length;
+                for (int k = 1; k < slots.length; k += 1) {
+                    before[k] = slots[k].setting();
+                }
+                machine.step();
+                for (int k = 1; k < slots.length; k += 1) {
+                    _advances[row + k] = _advances[row - slots.length + k]
+                        + (slots[k].setting() != before[k] ? 1 : 0);
+                }
+                for (int c = 0; c < size; c += 1) {
+                    _table[i * size + c] =
+                        _alphabet.toChar(machine.substitute(c));
+                }
+            }
+            machine.setStats(stats);
+            _end = machine.settingsAfter(0);
+            _rows = length;
+            machine.setSettings(_start);
+        }
+
+        /** Return the number of keypresses I cover. */
+        int rows() {
+            return _rows;
+        }
+
+        /** Put MACHINE in the state in which I start. */
+        void apply(Machine machine) {
+            machine.insertRotors(_rotors);
+            machine.setPlugboard(_plugboard);
+            machine.setSettings(_start);
+        }
+
+        /** Put MACHINE, which I have been applied to, in the state after
+         *  the last keypress I cover. */
+        void finish(Machine machine) {
+            machine.setSettings(_end);
+        }
+
+        /** Count in the statistics of MACHINE, if any, the rotor advances
+         *  made by the COUNT keypresses I cover starting at keypress
+         *  POSITION, as if MACHINE had made them. */
+        void countAdvances(Machine machine, long position, int count) {
+            if (machine.stats() == null || count == 0) {
+                return;
+            }
+            int n = _rotors.length;
+            int from = (int) position * n, to = from + count * n;
+            for (int k = 1; k < n; k += 1) {
+                machine.countAdvances(k, _advances[to + k]
+                                      - _advances[from + k]);
+            }
+        }
+
+        /** Convert the LEN characters of CHARS starting at OFF in place,
+         *  the first being typed at keypress POSITION (counting from 0)
+         *  after the settings, as far as I cover.  Return the number of
+         *  characters converted. */
+        int convert(char[] chars, int off, int len, long position) {
+            int count = (int) Math.max(0, Math.min(len, _rows - position));
+            int size = _alphabet.size();
+            int row = (int) position * size;
+            for (int i = off; i < off + count; i += 1, row += size) {
+                chars[i] = _table[row + _alphabet.toInt(chars[i])];
+            }
+            return count;
+        }
+
+        /** Names of the rotors, by slot. */
+        private final String[] _rotors;
+        /** The plugboard. */
+        private final Permutation _plugboard;
+        /** The alphabet. */
+        private final Alphabet _alphabet;
+        /** Rotor settings at the start and after the last row. */
+        private final int[] _start, _end;
+        /** Row I holds the output for each input at keypress I. */
+        private final char[] _table;
+        /** Number of rows. */
+        private final int _rows;
+        /** Element I * (number of slots) + K is the number of advances of
+         *  the rotor in slot K in the first I rows. */
+        private final int[] _advances;
+    }
+
+    /** Default number of keystreams cached. */
+    static final int DEFAULT_CAPACITY = 64;
+    /** Default number of keypresses each keystream covers. */
+    static final int DEFAULT_LENGTH = 256;
+
+    /** Number of keypresses each keystream covers. */
+    private final int _length;
+    /** Cached keystreams, by normalized settings line, least recently
+     *  used first. */
+    private final LinkedHashMap<String, Keystream> _entries;
+    /** Lookup counters. */
+    private final LongAdder _hits = new LongAdder(), _misses = new LongAdder();
+}
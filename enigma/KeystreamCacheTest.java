@@ -0,0 +1,98 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeystreamCache class.
+ *  @author Jerome
+ */
+public class KeystreamCacheTest {
+
+    /** Settings lines for navalMachine(4). */
+    private static final String[] SETTINGS = {
+        "* B Beta III II AXL (HQ) (EX)",
+        "* C Gamma I III KDV",
+        "* B Gamma II I QEQ (AQ) (BZ) (MX)",
+    };
+
+    /** Return the output of a pipeline converting INPUT, starting SKIP
+     *  characters in, with CACHE. */
+    private static String process(String input, long skip,
+                                  KeystreamCache cache) throws IOException {
+        Pipeline pipeline = new Pipeline(navalMachine(4));
+        pipeline.setCache(cache);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pipeline.process(Channels.newChannel(
+                             new ByteArrayInputStream(input.getBytes())),
+                         Channels.newChannel(out), skip, false, false);
+        return out.toString();
+    }
+
+    @Test
+    public void countersTest() {
+        KeystreamCache cache = new KeystreamCache(2, 10);
+        Machine machine = navalMachine(4);
+        cache.setUp(machine, SETTINGS[0]);
+        cache.setUp(machine, "  " + SETTINGS[0].replace(" ", "\t "));
+        cache.setUp(machine, SETTINGS[1]);
+        cache.setUp(machine, SETTINGS[0]);
+        cache.setUp(machine, SETTINGS[2]);
+        assertEquals(2, cache.hits());
+        assertEquals(3, cache.misses());
+        assertEquals(2, cache.size());
+        cache.setUp(machine, SETTINGS[0]);
+        cache.setUp(machine, SETTINGS[1]);
+        assertEquals(3, cache.hits());
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    public void keystreamTest() {
+        KeystreamCache cache = new KeystreamCache(4, 10);
+        Machine machine = navalMachine(4);
+        Main.setUp(machine, SETTINGS[2]);
+        String expected = machine.convert("ATTACKATDAWNFROMTHEWEST");
+        Main.setUp(machine, SETTINGS[1]);
+        cache.setUp(machine, SETTINGS[2]);
+        KeystreamCache.Keystream keystream =
+            cache.setUp(machine, SETTINGS[2]);
+        char[] msg = "ATTACKATDAWNFROMTHEWEST".toCharArray();
+        assertEquals(6, keystream.convert(msg, 0, 6, 0));
+        assertEquals(4, keystream.convert(msg, 6, 17, 6));
+        keystream.finish(machine);
+        machine.convert(msg, 10, 13, msg, 10);
+        assertEquals(expected, new String(msg));
+    }
+
+    @Test
+    public void pipelineTest() throws IOException {
+        Random random = new Random(19);
+        StringBuilder input = new StringBuilder();
+        for (int m = 0; m < 30; m += 1) {
+            input.append(SETTINGS[random.nextInt(SETTINGS.length)])
+                .append('\n');
+            for (int line = random.nextInt(3); line >= 0; line -= 1) {
+                for (int i = random.nextInt(40); i >= 0; i -= 1) {
+                    input.append((char) ('A' + random.nextInt(26)));
+                }
+                input.append('\n');
+            }
+        }
+        String text = input.toString();
+        KeystreamCache cache = new KeystreamCache(2, 25);
+        assertEquals(process(text, 0, null), process(text, 0, cache));
+        assertTrue(cache.hits() > 0);
+        for (long skip : new long[] {3, 25, 40}) {
+            assertEquals(process(text, skip, null),
+                         process(text, skip, cache));
+        }
+    }
+}
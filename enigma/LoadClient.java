@@ -0,0 +1,179 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Load generator for EnigmaServer.  Opens a number of connections to a
+ *  server on this host and, on each, sends requests one after another
+ *  (each a settings line and a message), waiting for each reply before
+ *  sending the next request, then reports requests per second and the
+ *  mean latency.  Untimed warmup requests are sent first, so that the
+ *  server's code is compiled before it is measured.
+ *
+ *  Usage: java enigma.LoadClient [OPTIONS] PORT SETTINGS
+ *  where SETTINGS is a settings line for the server's configuration (as
+ *  one argument).  OPTIONS are
+ *    -c N     connections (default 16),
+ *    -n N     timed requests per connection (default 10000),
+ *    -w N     warmup requests per connection (default 1000),
+ *    -l N     message length (default 100), and
+ *    -a CHARS characters of the random messages (default A-Z).
+ *  @author Jerome
+ */
+public final class LoadClient {
+
+    /** Run the load described by ARGS (see class comment). */
+    public static void main(String... args) {
+        int connections = 16, requests = 10000, warmups = 1000, length = 100;
+        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        ArrayList<String> operands = new ArrayList<>();
+        try {
+            for (int k = 0; k < args.length; k += 1) {
+                switch (args[k]) {
+                case "-c":
+                    connections = Integer.parseInt(args[++k]);
+                    break;
+                case "-n":
+                    requests = Integer.parseInt(args[++k]);
+                    break;
+                case "-w":
+                    warmups = Integer.parseInt(args[++k]);
+                    break;
+                case "-l":
+                    length = Integer.parseInt(args[++k]);
+                    break;
+                case "-a":
+                    chars = args[++k];
+                    break;
+                default:
+                    operands.add(args[k]);
+                }
+            }
+            if (operands.size() != 2) {
+                throw error("usage: java enigma.LoadClient [OPTIONS] "
+                            + "PORT SETTINGS");
+            }
+            LoadClient client =
+                new LoadClient(Integer.parseInt(operands.get(0)),
+                               connections);
+            Random random = new Random(16);
+            char[] msg = new char[length];
+            for (int i = 0; i < length; i += 1) {
+                msg[i] = chars.charAt(random.nextInt(chars.length()));
+            }
+            String settings = operands.get(1), message = new String(msg);
+            client.run(settings, message, warmups);
+            long start = System.nanoTime();
+            client.run(settings, message, requests);
+            double secs = (System.nanoTime() - start) / 1e9;
+            long total = (long) requests * connections;
+            System.out.printf("%,d requests of %d characters on %d "
+                              + "connections in %.2f s: %,.0f requests/s, "
+                              + "mean latency %.1f us%n", total, length,
+                              connections, secs, total / secs,
+                              secs * 1e6 * connections / total);
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number: %s%n", excp.getMessage());
+            System.exit(1);
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A client sending requests to the server on PORT of this host over
+     *  CONNECTIONS connections at once. */
+    LoadClient(int port, int connections) {
+        _port = port;
+        _connections = connections;
+    }
+
+    /** Send REQUESTS requests, each SETTINGS and then MESSAGE, on each of
+     *  my connections, and return the replies received on the first one.
+     *  Throws an EnigmaException if the server reports an error. */
+    List<String> run(String settings, String message, int requests) {
+        ExecutorService threads = EnigmaServer.connectionExecutor();
+        ArrayList<Future<List<String>>> tasks = new ArrayList<>();
+        try {
+            for (int c = 0; c < _connections; c += 1) {
+                boolean keep = c == 0;
+                Callable<List<String>> task = () ->
+                    connection(settings, message, requests, keep);
+                tasks.add(threads.submit(task));
+            }
+            List<String> result = null;
+            for (Future<List<String>> task : tasks) {
+                List<String> replies = task.get();
+                if (result == null) {
+                    result = replies;
+                }
+            }
+            return result;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof EnigmaException) {
+                throw (EnigmaException) cause;
+            }
+            throw error("connection failed: %s", cause.getMessage());
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    /** Send REQUESTS requests, each SETTINGS and then MESSAGE, on a new
+     *  connection, returning the replies if KEEP, and otherwise an empty
+     *  list. */
+    private List<String> connection(String settings, String message,
+                                    int requests, boolean keep)
+        throws IOException {
+        ArrayList<String> result = new ArrayList<>();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        _port);
+             BufferedReader in = new BufferedReader(
+                 new InputStreamReader(socket.getInputStream(),
+                                       StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(),
+                                                 StandardCharsets.UTF_8)) {
+            socket.setTcpNoDelay(true);
+            String request = settings + "\n" + message + "\n";
+            for (int k = 0; k < requests; k += 1) {
+                out.write(request);
+                out.flush();
+                String reply = in.readLine();
+                if (reply == null) {
+                    throw error("server closed the connection");
+                }
+                if (reply.startsWith("Error: ")) {
+                    throw error("server: %s", reply.substring(7));
+                }
+                if (keep) {
+                    result.add(reply);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Port of the server. */
+    private final int _port;
+    /** Number of connections used at once. */
+    private final int _connections;
+}
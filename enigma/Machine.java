@@ -1,7 +1,7 @@
 package enigma;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 import java.util.Collection;
 
 import static enigma.EnigmaException.*;
@@ -16,22 +16,45 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, new RotorCatalog(alpha, allRotors));
+    }
+
+    /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  and 0 <= PAWLS < NUMROTORS pawls, whose available rotors are those
+     *  in CATALOG. */
+    Machine(Alphabet alpha, int numRotors, int pawls, RotorCatalog catalog) {
         _alphabet = alpha;
         _nRotors = numRotors;
         _nPawls = pawls;
-        ArrayList<String> rotorNames = new ArrayList<>();
-        for (Rotor rot : allRotors) {
-            if (rotorNames.contains(rot.name())) {
-                throw new EnigmaException("no rotor repeating.");
-            }
-            if (rot.alphabet() != _alphabet) {
-                throw new EnigmaException("Rotors and machine must "
-                        + "use the same alphabet.");
-            }
-            rotorNames.add(rot.name());
-        }
-        _theRotors = allRotors;
+        _catalog = catalog;
+    }
+
+    /** Return a new machine with my alphabet, slots, pawls, mode, and
+     *  statistics, whose available rotors are copies of mine (so that the
+     *  two machines may be used independently, e.g. by different
+     *  threads).  No rotors are inserted in the copy. */
+    Machine copy() {
+        Machine result =
+            new Machine(_alphabet, _nRotors, _nPawls, _catalog.copy());
+        result._composite = _composite;
+        result.setStats(_stats);
+        return result;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the rotors available for insertion, building any not
+     *  yet built (see RotorCatalog). */
+    Collection<Rotor> availableRotors() {
+        return _catalog.rotors();
+    }
 
+    /** Return the catalog of the rotors available for insertion. */
+    RotorCatalog catalog() {
+        return _catalog;
     }
 
     /** Return the number of rotor slots I have. */
@@ -48,22 +71,22 @@ class Machine {
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
-        setrotors = new Rotor[numRotors()];
-        HashMap<String, Rotor> mapRotors = new HashMap<String, Rotor>();
-        for (Rotor rotor : _theRotors) {
-            mapRotors.put(rotor.name().toUpperCase(), rotor);
+        if (rotors.length != numRotors()) {
+            throw new EnigmaException("the amount of rotors to be added "
+                    + "must match the capacity of the machine");
         }
+        setrotors = new Rotor[numRotors()];
         for (int a = 0; a < rotors.length; a++) {
-            String key = rotors[a].toUpperCase();
-            if (mapRotors.containsKey(key)) {
-                setrotors[a] = mapRotors.get(key);
+            setrotors[a] = _catalog.get(rotors[a]);
+            if (setrotors[a] == null) {
+                throw error("unknown rotor %s", rotors[a]);
             }
         }
-
-        if (rotors.length != setrotors.length) {
-            throw new EnigmaException("the amount of rotors to be added "
-                    + "must match the capacity of the machine");
-        }
+        _plan = null;
+        _positions = new int[numRotors()];
+        _split = Math.max(1, numRotors() - 2);
+        _slow = new int[_alphabet.size()];
+        _slowDirty = true;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
@@ -82,39 +105,56 @@ class Machine {
             }
             setrotors[s].set(setting.charAt(s - 1));
         }
+        _slowDirty = true;
+    }
+    /** Turn composite mode on iff ON.  In composite mode, the reflector
+     *  and all but the two rightmost rotors, which move only rarely, are
+     *  treated as one permutation, rebuilt only when one of those rotors
+     *  advances, so that a character passes through just four rotors
+     *  however many the machine has.  Rotor settings must then be changed
+     *  only through setRotors or skip. */
+    void setComposite(boolean on) {
+        _composite = on;
+        _slowDirty = true;
     }
+
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
     }
 
+    /** Return the plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        boolean[] atnotch = new boolean[numRotors()];
-        boolean[] rotated = new boolean[numRotors()];
+        advanceRotors();
+        return substitute(c);
+    }
 
-        for (int a = numRotors() - 1; a > 0; a--) {
-            atnotch[a] = setrotors[a].atNotch();
-            rotated[a] = false;
-        }
-        setrotors[numRotors() - 1].advance();
-        rotated[numRotors() - 1] = true;
-        for (int a = numRotors() - 2; a > 0; a--) {
-            if (setrotors[a].rotates()) {
-                if (atnotch[a + 1]) {
-                    setrotors[a].advance();
-                    rotated[a] = true;
-                    if (!rotated[a + 1]) {
-                        setrotors[a + 1].advance();
-                        rotated[a + 1] = true;
-                    }
-                }
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1) with the rotors in their
+     *  current settings, without advancing them. */
+    int substitute(int c) {
+        int oz = _plugboard.permute(c);
+        if (_composite) {
+            if (_slowDirty) {
+                buildSlow();
             }
+            for (int j = setrotors.length - 1; j >= _split; j--) {
+                oz = setrotors[j].convertForward(oz);
+            }
+            oz = _slow[oz];
+            for (int k = _split; k < setrotors.length; k += 1) {
+                oz = setrotors[k].convertBackward(oz);
+            }
+            return _plugboard.invert(oz);
         }
-        int oz = _plugboard.permute(c);
         for (int j = setrotors.length - 1; j >= 0; j--) {
             oz = setrotors[j].convertForward(oz);
         }
@@ -125,16 +165,155 @@ class Machine {
         return oz;
     }
 
+    /** Advance the rotors as for one keypress, without converting. */
+    void step() {
+        advanceRotors();
+    }
+
+    /** Set _slow to the composition of the rotors left of _split, forward,
+     *  then back out through them after the reflector. */
+    private void buildSlow() {
+        for (int x = 0; x < _slow.length; x += 1) {
+            int oz = x;
+            for (int j = _split - 1; j >= 0; j--) {
+                oz = setrotors[j].convertForward(oz);
+            }
+            for (int k = 1; k < _split; k += 1) {
+                oz = setrotors[k].convertBackward(oz);
+            }
+            _slow[x] = oz;
+        }
+        _slowDirty = false;
+    }
+
+    /** Advance the rotors as for one keypress, as my stepping plan
+     *  directs. */
+    private void advanceRotors() {
+        int[] pos = _positions;
+        for (int a = numRotors() - 1; a > 0; a--) {
+            pos[a] = setrotors[a].setting();
+        }
+        int moved = steppingPlan().advance(pos);
+        for (int a = numRotors() - 1; a >= moved; a--) {
+            if (pos[a] != setrotors[a].setting()) {
+                setrotors[a].set(pos[a]);
+                if (_advances != null) {
+                    _advances[a] += 1;
+                }
+            }
+        }
+        if (moved < _split) {
+            _slowDirty = true;
+        }
+    }
+
+    /** Count my rotor advances in STATS (not if null).  Advances made by
+     *  skip are not counted.  To keep the counting cheap, they are added
+     *  to STATS only by flushStats. */
+    void setStats(EnigmaStats stats) {
+        _stats = stats;
+        _advances = stats == null ? null : new long[numRotors()];
+    }
+
+    /** Add the rotor advances counted since the last call to my
+     *  statistics, if any. */
+    void flushStats() {
+        if (_stats != null) {
+            _stats.advanced(_advances);
+            Arrays.fill(_advances, 0);
+        }
+    }
+
+    /** Count N advances of the rotor in slot K made on my behalf, as by
+     *  a precomputed keystream, if I am counting advances. */
+    void countAdvances(int k, long n) {
+        if (_advances != null) {
+            _advances[k] += n;
+        }
+    }
+
+    /** Return the statistics counting my rotor advances, or null. */
+    EnigmaStats stats() {
+        return _stats;
+    }
+
+    /** Advance my rotors as if N >= 0 characters had been converted,
+     *  without converting any (see settingsAfter). */
+    void skip(long n) {
+        setSettings(settingsAfter(n));
+    }
+
+    /** Set the setting of each rotor K > 0 to SETTINGS[K], as returned by
+     *  settingsAfter. */
+    void setSettings(int[] settings) {
+        for (int j = 1; j < numRotors(); j += 1) {
+            setrotors[j].set(settings[j]);
+        }
+        _slowDirty = true;
+    }
+
+    /** Return the settings my rotors would have after N >= 0 more
+     *  keypresses, without changing my state.  Element K is the setting of
+     *  rotor K (element 0, the reflector, is always 0).  The time taken
+     *  does not depend on N (see SteppingPlan.settingsAfter). */
+    int[] settingsAfter(long n) {
+        int[] current = new int[numRotors()];
+        for (int j = 1; j < numRotors(); j += 1) {
+            current[j] = setrotors[j].setting();
+        }
+        return steppingPlan().settingsAfter(current, n);
+    }
+
+    /** Return the stepping plan of the rotors now in my slots, compiling
+     *  it when first needed after they are inserted. */
+    SteppingPlan steppingPlan() {
+        if (_plan == null) {
+            _plan = new SteppingPlan(setrotors);
+        }
+        return _plan;
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String newmsg = "";
-        for (int s = 0; s < msg.length(); s++) {
-            int changed = _alphabet.toInt(msg.charAt(s));
-            char converted = _alphabet.toChar(convert(changed));
-            newmsg += converted;
+        char[] chars = msg.toCharArray();
+        convert(chars, 0, chars.length, chars, 0);
+        return new String(chars);
+    }
+
+    /** Convert the LEN characters IN[OFF .. OFF+LEN-1], storing the
+     *  results in OUT[OUTOFF .. OUTOFF+LEN-1] and updating the state of
+     *  the rotors accordingly.  IN and OUT may be the same array.  No
+     *  storage is allocated per character. */
+    void convert(char[] in, int off, int len, char[] out, int outOff) {
+        if (off < 0 || len < 0 || outOff < 0 || off + len > in.length
+            || outOff + len > out.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int s = 0; s < len; s += 1) {
+            int changed = _alphabet.toInt(in[off + s]);
+            out[outOff + s] = _alphabet.toChar(convert(changed));
         }
-        return newmsg;
+    }
+
+    /** Convert characters from IN into OUT until IN is exhausted or OUT
+     *  is full, advancing the positions of both buffers and updating the
+     *  state of the rotors accordingly.  Returns the number of characters
+     *  converted. */
+    int convert(CharBuffer in, CharBuffer out) {
+        int len = Math.min(in.remaining(), out.remaining());
+        if (in.hasArray() && out.hasArray()) {
+            convert(in.array(), in.arrayOffset() + in.position(), len,
+                    out.array(), out.arrayOffset() + out.position());
+            in.position(in.position() + len);
+            out.position(out.position() + len);
+        } else {
+            for (int s = 0; s < len; s += 1) {
+                int changed = _alphabet.toInt(in.get());
+                out.put(_alphabet.toChar(convert(changed)));
+            }
+        }
+        return len;
     }
 
     /** Returns the array of rotors. */
@@ -148,11 +327,30 @@ class Machine {
     private int _nRotors;
     /** additional. */
     private int _nPawls;
-    /** additional. */
-    private Collection<Rotor> _theRotors;
+    /** The rotors available for insertion. */
+    private final RotorCatalog _catalog;
     /** additional. */
     private Permutation _plugboard;
     /** additional. */
     private Rotor[] setrotors;
+    /** How the rotors in my slots step, or null if not yet compiled. */
+    private SteppingPlan _plan;
+    /** Scratch space for advanceRotors: the rotor settings. */
+    private int[] _positions;
+    /** True iff in composite mode (see setComposite). */
+    private boolean _composite;
+    /** Statistics to which my rotor advances are added, or null. */
+    private EnigmaStats _stats;
+    /** Number of advances of the rotor in each slot not yet added to
+     *  _stats, or null if not counting. */
+    private long[] _advances;
+    /** Rotors 0 .. _split-1 form the slow part of the stack. */
+    private int _split;
+    /** The slow part of the stack, composed: _slow[X] is the result of
+     *  passing X leftward through the slow rotors, reflecting, and
+     *  passing back out. */
+    private int[] _slow;
+    /** True iff _slow must be rebuilt before use. */
+    private boolean _slowDirty;
 }
 
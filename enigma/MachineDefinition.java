@@ -0,0 +1,247 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static enigma.EnigmaException.*;
+
+/** The immutable part of an Enigma machine: its alphabet, slots, pawls,
+ *  and the wiring and notches of each available rotor, compiled into
+ *  tables.  A rotor is built and compiled only when a session first uses
+ *  it, so that a configuration offering thousands of rotors costs only
+ *  those used, as in Machine.  A definition holds no rotor positions, so
+ *  one may be shared by any number of threads, each converting messages
+ *  in its own Session, which refers to the definition's tables rather
+ *  than copying them.
+ *  @author Jerome
+ */
+class MachineDefinition {
+
+    /** The definition of MACHINE's alphabet, slots, pawls, and available
+     *  rotors. */
+    MachineDefinition(Machine machine) {
+        _alphabet = machine.alphabet();
+        _numRotors = machine.numRotors();
+        _numPawls = machine.numPawls();
+        _catalog = machine.catalog().copy();
+        int size = _alphabet.size();
+        _forwardTable = new int[_numRotors * 2 * size];
+        _backwardTable = new int[_numRotors * 2 * size];
+        _notchTable = new boolean[_numRotors * size];
+    }
+
+    /** Return the tables of the rotor named NAME, ignoring case, building
+     *  and compiling the rotor if this is its first use, or null if there
+     *  is no such rotor.  Its tables are added to the combined tables
+     *  (see forwardTable). */
+    synchronized RotorTables rotor(String name) {
+        String key = RotorCatalog.key(name);
+        RotorTables result = _rotors.get(key);
+        if (result != null) {
+            return result;
+        }
+        Rotor rotor = _catalog.get(name);
+        if (rotor == null) {
+            return null;
+        }
+        int size = _alphabet.size();
+        int index = _rotors.size();
+        Permutation perm = rotor.permutation();
+        int[] forward = new int[2 * size], backward = new int[2 * size];
+        boolean[] notches = new boolean[size];
+        for (int k = 0; k < 2 * size; k += 1) {
+            forward[k] = perm.permute(k % size);
+            backward[k] = perm.invert(k % size);
+        }
+        for (int k = 0; k < size; k += 1) {
+            notches[k] = rotor.notchAt(k);
+        }
+        result = new RotorTables(rotor.name(), index, rotor.reflecting(),
+                                 rotor.rotates(), forward, backward,
+                                 notches);
+        if (_notchTable.length < (index + 1) * size) {
+            _forwardTable = Arrays.copyOf(_forwardTable,
+                                          2 * _forwardTable.length);
+            _backwardTable = Arrays.copyOf(_backwardTable,
+                                           2 * _backwardTable.length);
+            _notchTable = Arrays.copyOf(_notchTable, 2 * _notchTable.length);
+        }
+        System.arraycopy(forward, 0, _forwardTable, index * 2 * size,
+                         2 * size);
+        System.arraycopy(backward, 0, _backwardTable, index * 2 * size,
+                         2 * size);
+        System.arraycopy(notches, 0, _notchTable, index * size, size);
+        _rotors.put(key, result);
+        return result;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return my number of pawls. */
+    int numPawls() {
+        return _numPawls;
+    }
+
+    /** Return the forward tables of all my rotors compiled so far, one
+     *  after another: those of rotor R start at R.index() * 2 * alphabet
+     *  size.  Lookups for streams using different rotors then differ only
+     *  in their offsets into one array (see SessionBatch).  Rotors first
+     *  used later are added to a new array. */
+    synchronized int[] forwardTable() {
+        return _forwardTable;
+    }
+
+    /** Return the backward tables of all my rotors compiled so far,
+     *  arranged as for forwardTable(). */
+    synchronized int[] backwardTable() {
+        return _backwardTable;
+    }
+
+    /** Return the notches of all my rotors compiled so far, one after
+     *  another: those of rotor R start at R.index() * alphabet size. */
+    synchronized boolean[] notchTable() {
+        return _notchTable;
+    }
+
+    /** Return a new session set up according to SETTINGSLINE, a settings
+     *  line as for Main.setUp. */
+    Session session(String settingsLine) {
+        SettingsLine line = new SettingsLine(settingsLine, _numRotors);
+        RotorTables[] slots = new RotorTables[_numRotors];
+        for (int j = 0; j < _numRotors; j += 1) {
+            slots[j] = rotor(line.rotors()[j]);
+            if (slots[j] == null) {
+                throw error("unknown rotor %s", line.rotors()[j]);
+            }
+        }
+        if (!slots[0].reflecting()) {
+            throw new EnigmaException("First Rotor should be a reflector");
+        }
+        String positions = line.positions();
+        if (positions.length() != _numRotors - 1) {
+            throw new EnigmaException("Wheel settings wrong length");
+        }
+        int[] settings = new int[_numRotors];
+        for (int j = 1; j < _numRotors; j += 1) {
+            if (!_alphabet.contains(positions.charAt(j - 1))) {
+                throw new EnigmaException("Bad character in "
+                        + "wheel settings");
+            }
+            settings[j] = _alphabet.toInt(positions.charAt(j - 1));
+        }
+        Permutation plugboard = new Permutation(line.plugboard(), _alphabet);
+        int[] plugIn = new int[_alphabet.size()];
+        int[] plugOut = new int[_alphabet.size()];
+        for (int k = 0; k < plugIn.length; k += 1) {
+            plugIn[k] = plugboard.permute(k);
+            plugOut[k] = plugboard.invert(k);
+        }
+        return new Session(this, slots, settings, plugIn, plugOut);
+    }
+
+    /** The compiled form of one rotor.  Element K of the forward and
+     *  backward tables is the rotor's permutation, or its inverse, applied
+     *  to K modulo the alphabet size, so that a rotor at setting S takes
+     *  P to forward[P + S] - S (mod size) without a division. */
+    static final class RotorTables {
+
+        /** Tables for the rotor NAME, number INDEX of its definition,
+         *  which reflects iff REFLECTING and moves iff ROTATES, with tables
+         *  FORWARD and BACKWARD and a notch at each position K where
+         *  NOTCHES[K]. */
+        RotorTables(String name, int index, boolean reflecting,
+                    boolean rotates, int[] forward, int[] backward,
+                    boolean[] notches) {
+            _name = name;
+            _index = index;
+            _reflecting = reflecting;
+            _rotates = rotates;
+            _forward = forward;
+            _backward = backward;
+            _notches = notches;
+        }
+
+        /** Return the rotor's name. */
+        String name() {
+            return _name;
+        }
+
+        /** Return the rotor's number in its definition. */
+        int index() {
+            return _index;
+        }
+
+        /** Return true iff the rotor reflects. */
+        boolean reflecting() {
+            return _reflecting;
+        }
+
+        /** Return true iff the rotor moves. */
+        boolean rotates() {
+            return _rotates;
+        }
+
+        /** Return the size of the rotor's alphabet. */
+        int size() {
+            return _notches.length;
+        }
+
+        /** Return true iff the rotor has a notch at POSN. */
+        boolean notchAt(int posn) {
+            return _notches[posn];
+        }
+
+        /** Return the conversion of P by the rotor at setting SETTING. */
+        int forward(int p, int setting) {
+            int r = _forward[p + setting] - setting;
+            return r < 0 ? r + _notches.length : r;
+        }
+
+        /** Return the conversion of E by the inverse of the rotor at
+         *  setting SETTING. */
+        int backward(int e, int setting) {
+            int r = _backward[e + setting] - setting;
+            return r < 0 ? r + _notches.length : r;
+        }
+
+        /** Rotor name. */
+        private final String _name;
+        /** Rotor number. */
+        private final int _index;
+        /** True iff a reflector. */
+        private final boolean _reflecting;
+        /** True iff a moving rotor. */
+        private final boolean _rotates;
+        /** Forward table, of twice the alphabet size. */
+        private final int[] _forward;
+        /** Backward table, of twice the alphabet size. */
+        private final int[] _backward;
+        /** Notch positions. */
+        private final boolean[] _notches;
+    }
+
+    /** Common alphabet of my rotors. */
+    private final Alphabet _alphabet;
+    /** Number of rotor slots. */
+    private final int _numRotors;
+    /** Number of pawls. */
+    private final int _numPawls;
+    /** The available rotors. */
+    private final RotorCatalog _catalog;
+    /** Forward tables of the rotors compiled, by index. */
+    private int[] _forwardTable;
+    /** Backward tables of the rotors compiled, by index. */
+    private int[] _backwardTable;
+    /** Notches of the rotors compiled, by index. */
+    private boolean[] _notchTable;
+    /** Rotors compiled, by key (see RotorCatalog.key). */
+    private final HashMap<String, RotorTables> _rotors = new HashMap<>();
+}
@@ -1,5 +1,9 @@
 package enigma;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -9,6 +13,18 @@ import static org.junit.Assert.*;
 import static enigma.TestUtils.*;
 
 public class MachineTest {
+
+    /** Return navalMachine(5) with rotors B Beta III IV I at AXLE and a
+     *  small plugboard. */
+    private static Machine axleMachine() {
+        Machine machine = navalMachine(5);
+        machine.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        machine.setRotors("AXLE");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                             UPPER));
+        return machine;
+    }
+
     @Test
     public void insertRotorsTest() {
         Alphabet standard = new Alphabet("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
@@ -36,9 +52,12 @@ public class MachineTest {
         assertEquals(machine1.getRotorList().length, 3);
 
         inp[2] = "LOVE SHOT";
-        machine1.insertRotors(inp);
-        assertEquals(machine1.getRotorList().length, 3);
-
+        try {
+            machine1.insertRotors(inp);
+            fail("unknown rotor accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(machine1.getRotorList().length, 3);
+        }
     }
 
     @Test
@@ -115,6 +134,188 @@ public class MachineTest {
                 "FLPNXGXIXTYJUJRCAUGEUNCFMKUF");
     }
 
+    @Test
+    public void unknownRotorTest() {
+        Machine machine = navalMachine(5);
+        try {
+            Main.setUp(machine, "* B Beta III IX I AXLE");
+            fail("unknown rotor accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("unknown rotor IX", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void bulkConvertTest() {
+        Machine machine1 = axleMachine();
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        String expected = machine1.convert(msg);
+
+        machine1.setRotors("AXLE");
+        char[] in = ("..." + msg).toCharArray();
+        char[] out = new char[msg.length() + 1];
+        machine1.convert(in, 3, msg.length(), out, 1);
+        assertEquals(expected, new String(out, 1, msg.length()));
+
+        machine1.setRotors("AXLE");
+        CharBuffer src = CharBuffer.wrap(msg);
+        CharBuffer dst = CharBuffer.allocate(20);
+        StringBuilder result = new StringBuilder();
+        while (src.hasRemaining()) {
+            machine1.convert(src, dst);
+            dst.flip();
+            result.append(dst);
+            dst.clear();
+        }
+        assertEquals(expected, result.toString());
+    }
+
+    /** Return a random machine over the alphabet ALPHA with NUMROTORS
+     *  slots, all but the reflector and a fixed rotor moving, whose
+     *  rotors have random notches (adjacent ones only if ADJACENT) and
+     *  random settings drawn from RANDOM. */
+    private Machine randomMachine(Random random, String alpha, int numRotors,
+                                  boolean adjacent) {
+        Alphabet alphabet = new Alphabet(alpha);
+        Permutation perm = new Permutation("", alphabet);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[numRotors];
+        rotors.add(new Reflector("R", randomPerm(random, alphabet, 2)));
+        rotors.add(new FixedRotor("F", randomPerm(random, alphabet, 0)));
+        names[0] = "R";
+        names[1] = "F";
+        for (int j = 2; j < numRotors; j += 1) {
+            String notches = "";
+            for (int q = 0; q < alpha.length(); q += 1) {
+                if (random.nextInt(3) == 0 && (adjacent || notches.isEmpty()
+                    || notches.charAt(notches.length() - 1)
+                       != alpha.charAt(q - 1))) {
+                    notches += alpha.charAt(q);
+                }
+            }
+            if (!adjacent && notches.length() > 1
+                && notches.charAt(0) == alpha.charAt(0)
+                && notches.endsWith(alpha.substring(alpha.length() - 1))) {
+                notches = notches.substring(1);
+            }
+            names[j] = "M" + j;
+            rotors.add(new MovingRotor(names[j],
+                                       randomPerm(random, alphabet, 0),
+                                       notches));
+        }
+        Machine machine = new Machine(alphabet, numRotors, numRotors - 2,
+                                      rotors);
+        machine.insertRotors(names);
+        String setting = "";
+        for (int j = 1; j < numRotors; j += 1) {
+            setting += alpha.charAt(random.nextInt(alpha.length()));
+        }
+        machine.setRotors(setting);
+        machine.setPlugboard(perm);
+        return machine;
+    }
+
+    /** Return a random permutation of ALPHABET drawn from RANDOM: a
+     *  single cycle if CYCLELEN is 0, else cycles of length CYCLELEN. */
+    private Permutation randomPerm(Random random, Alphabet alphabet,
+                                   int cycleLen) {
+        ArrayList<Character> chars = new ArrayList<>();
+        for (int i = 0; i < alphabet.size(); i += 1) {
+            chars.add(alphabet.toChar(i));
+        }
+        Collections.shuffle(chars, random);
+        int len = cycleLen == 0 ? chars.size() : cycleLen;
+        String cycles = "";
+        for (int i = 0; i + len <= chars.size(); i += len) {
+            cycles += "(";
+            for (int k = i; k < i + len; k += 1) {
+                cycles += chars.get(k);
+            }
+            cycles += ")";
+        }
+        return new Permutation(cycles, alphabet);
+    }
+
+    /** Return the settings of the rotors of M. */
+    private int[] settings(Machine m) {
+        int[] result = new int[m.numRotors()];
+        for (int j = 1; j < m.numRotors(); j += 1) {
+            result[j] = m.getRotorList()[j].setting();
+        }
+        return result;
+    }
+
+    @Test
+    public void skipMatchesSteppingTest() {
+        Random random = new Random(61);
+        for (int trial = 0; trial < 300; trial += 1) {
+            Machine m = randomMachine(random, "ABCDEFG",
+                                      3 + random.nextInt(4), trial % 10 == 0);
+            int n = random.nextInt(400);
+            int[] jumped = m.settingsAfter(n);
+            for (int k = 0; k < n; k += 1) {
+                m.convert(0);
+            }
+            assertArrayEquals("trial " + trial + " n = " + n,
+                              settings(m), jumped);
+        }
+    }
+
+    @Test
+    public void skipNavalTest() {
+        Machine m = axleMachine();
+        char[] msg = new char[100000];
+        Arrays.fill(msg, 'A');
+        Machine jumped = axleMachine();
+        m.convert(msg, 0, msg.length, msg, 0);
+        jumped.skip(msg.length);
+        assertArrayEquals(settings(m), settings(jumped));
+        assertEquals(m.convert("HIAWATHA"), jumped.convert("HIAWATHA"));
+    }
+
+    @Test
+    public void compositeTest() {
+        Random random = new Random(7);
+        char[] msg = new char[20000];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = (char) ('A' + random.nextInt(26));
+        }
+        Machine plain = axleMachine();
+        Machine composite = axleMachine();
+        composite.setComposite(true);
+        char[] expected = new char[msg.length];
+        char[] result = new char[msg.length];
+        plain.convert(msg, 0, msg.length, expected, 0);
+        composite.convert(msg, 0, msg.length, result, 0);
+        assertArrayEquals(expected, result);
+
+        plain.setRotors("QEVZ");
+        composite.setRotors("QEVZ");
+        plain.skip(12345);
+        composite.skip(12345);
+        plain.convert(msg, 0, msg.length, expected, 0);
+        composite.convert(msg, 0, msg.length, result, 0);
+        assertArrayEquals(expected, result);
+    }
+
+    @Test
+    public void precomputedTest() {
+        Random random = new Random(11);
+        for (int trial = 0; trial < 20; trial += 1) {
+            Machine plain = randomMachine(new Random(trial), "ABCDE", 4,
+                                          false);
+            Machine source = randomMachine(new Random(trial), "ABCDE", 4,
+                                           false);
+            int limit = trial % 2 == 0 ? 1 << 20 : 5 * 3;
+            PrecomputedMachine pre = new PrecomputedMachine(source, limit);
+            assertEquals(trial % 2 == 0, pre.complete());
+            for (int k = 0; k < 2000; k += 1) {
+                int c = random.nextInt(5);
+                assertEquals(plain.convert(c), pre.convert(c));
+            }
+        }
+    }
+
     @Test
     public void uniqueRotorTest() {
         Alphabet standard = new Alphabet("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
@@ -1,12 +1,23 @@
 package enigma;
 
-import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Scanner;
 
 import static enigma.EnigmaException.*;
 
@@ -23,7 +34,86 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *  Options, which start with "--", may appear anywhere in ARGS and
+     *  are not counted above:
+     *    --parallel[=N]  Convert the segments between settings lines in
+     *                    parallel on N threads (default: one per core).
+     *    --batch[=DIR]   Treat ARGS[1] and all later arguments as
+     *                    input files, each converted on its own as
+     *                    above, where a directory stands for the files in
+     *                    it.  Writes the conversion of each file to DIR,
+     *                    in a file of the same name with ".out" added, or,
+     *                    without DIR, all of them, in order, to the
+     *                    standard output.  Files are converted on N
+     *                    threads as given by --parallel (default: one per
+     *                    core).  Reports files in error, and throughput,
+     *                    on the standard error.
+     *    --cache[=N]     Keep the keystreams of the last N (default 64)
+     *                    distinct settings lines, as described in
+     *                    KeystreamCache, so that messages sent with the
+     *                    same settings are set up and started faster.
+     *                    Reports cache hits and misses on the standard
+     *                    error.
+     *    --stats         Count characters, settings lines, and rotor
+     *                    advances, and time reading the configuration,
+     *                    applying settings lines, converting, and
+     *                    writing output, as described in EnigmaStats.
+     *                    The counters may be watched over JMX while the
+     *                    job runs, and are reported on the standard error
+     *                    when it ends.
+     *    --snapshots[=DIR] Keep a compiled snapshot of the configuration
+     *                    in DIR (default ~/.cache/enigma-snapshots), as
+     *                    described in ConfigSnapshot, and start from it
+     *                    rather than from the configuration file when
+     *                    the file has not changed.  Least recently used
+     *                    snapshots are deleted once DIR holds more than
+     *                    64 MiB of them.
+     *    --checkpoint=FILE Every 64 MiB or so of input, save in FILE
+     *                    the state of the conversion (see Checkpoint),
+     *                    so that a job stopped part way can be resumed.
+     *                    Needs input and output files, and cannot be
+     *                    used with --parallel or --batch.  FILE is
+     *                    deleted when the job completes.
+     *    --resume        With --checkpoint=FILE, if FILE exists, resume
+     *                    the job it was saved by from where FILE says,
+     *                    rather than starting again: the output file is
+     *                    cut back to what had been written then, and the
+     *                    input is read on from there.  The output file
+     *                    ends up as if the job had never been stopped.
+     *                    A checkpoint saved by a job with another
+     *                    configuration, input, or output file is
+     *                    refused, with the output left as it was.
+     *    --crib=CRIB[@K] Instead of converting the input, treat its
+     *                    non-blank characters as ciphertext, and search
+     *                    the configured rotors for every rotor order and
+     *                    setting (with no plugboard) that encrypts CRIB as
+     *                    the ciphertext starting at character K (default
+     *                    0).  Writes one settings line per key found, and
+     *                    reports progress on the standard error.  Runs on
+     *                    all cores unless --parallel=N is given.
+     *    --bombe=CRIB[@K] As for --crib, but for an unknown plugboard:
+     *                    writes the settings line of each key consistent
+     *                    with CRIB, with the plugboard pairs it implies
+     *                    for the characters of CRIB and the ciphertext
+     *                    under it.
+     *    --scan=CRIB,... Instead of converting the input, treat its
+     *                    non-blank characters as ciphertext, and write a
+     *                    line for each CRIB listing the offsets (for
+     *                    @K above) at which it may lie: those at which
+     *                    no character would encrypt to itself.
+     *    --attack=CORPUS Instead of converting the input, treat its
+     *                    non-blank characters as ciphertext, and find
+     *                    its most probable key, including plugboard,
+     *                    judging by the n-grams of the text in file
+     *                    CORPUS.  Writes the key's settings line and the
+     *                    decrypted message.  Reports progress and uses
+     *                    threads as for --crib.
+     *    --serve=PORT    Instead of converting the input, serve requests
+     *                    on port PORT of the loopback interface until
+     *                    killed, as described in EnigmaServer (0 for any
+     *                    free port, which is reported on the standard
+     *                    error). */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -36,43 +126,162 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
-        if (args.length < 1 || args.length > 3) {
+        ArrayList<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                setOption(arg);
+            } else {
+                files.add(arg);
+            }
+        }
+        if (_resume && _checkpoint == null) {
+            throw error("--resume needs --checkpoint");
+        }
+        if (_checkpoint != null && (_batch || _parallelism > 1)) {
+            throw error("--checkpoint cannot be used with --parallel "
+                        + "or --batch");
+        }
+        if (_batch) {
+            if (files.size() < 2) {
+                throw error("no input files for --batch");
+            }
+            _configText = readFile(files.get(0));
+            _config = new ConfigScanner(new String(_configText));
+            _batchInputs = files.subList(1, files.size());
+            _output = Channels.newChannel(System.out);
+            return;
+        }
+        if (files.size() < 1 || files.size() > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _configText = readFile(files.get(0));
+        _config = new ConfigScanner(new String(_configText));
+
+        if (_checkpoint != null && files.size() < 3) {
+            throw error("--checkpoint needs input and output files");
+        }
+        if (_checkpoint != null) {
+            _inputFile = Paths.get(files.get(1));
+            _outputFile = Paths.get(files.get(2));
+            _resuming = _resume && Files.exists(_checkpoint);
+        }
 
-        if (args.length > 1) {
-            _input = getInput(args[1]);
-            _input2 = getInput(args[1]);
+        if (files.size() > 1) {
+            _input = getChannel(files.get(1));
         } else {
-            _input = new Scanner(System.in);
-            _input2 = new Scanner(System.in);
+            _input = Channels.newChannel(System.in);
         }
 
-        if (args.length > 2) {
-            _output = getOutput(args[2]);
+        if (files.size() > 2) {
+            _output = getOutput(files.get(2));
         } else {
-            _output = System.out;
+            _output = Channels.newChannel(System.out);
         }
 
     }
 
-    /** Return a Scanner reading from the file named NAME.
-     * @param name2 */
-    private Scanner getInput(String name2) {
+    /** Record the command-line option OPTION (see comment on main). */
+    private void setOption(String option) {
+        if (option.equals("--parallel")) {
+            _parallelism = Runtime.getRuntime().availableProcessors();
+        } else if (option.startsWith("--parallel=")) {
+            try {
+                _parallelism = Integer.parseInt(option.substring(11));
+            } catch (NumberFormatException excp) {
+                _parallelism = 0;
+            }
+            if (_parallelism < 1) {
+                throw error("bad thread count in %s", option);
+            }
+        } else if (option.equals("--batch")) {
+            _batch = true;
+        } else if (option.startsWith("--batch=")) {
+            _batch = true;
+            _batchDir = Paths.get(option.substring(8));
+        } else if (option.equals("--cache")) {
+            _cacheSize = KeystreamCache.DEFAULT_CAPACITY;
+        } else if (option.startsWith("--cache=")) {
+            try {
+                _cacheSize = Integer.parseInt(option.substring(8));
+            } catch (NumberFormatException excp) {
+                _cacheSize = 0;
+            }
+            if (_cacheSize < 1) {
+                throw error("bad cache size in %s", option);
+            }
+        } else if (option.equals("--stats")) {
+            _statsWanted = true;
+        } else if (option.equals("--snapshots")) {
+            _snapshotDir = SNAPSHOT_DIR;
+        } else if (option.startsWith("--snapshots=")) {
+            _snapshotDir = Paths.get(option.substring(12));
+        } else if (option.startsWith("--checkpoint=")) {
+            _checkpoint = Paths.get(option.substring(13));
+        } else if (option.equals("--resume")) {
+            _resume = true;
+        } else if (option.startsWith("--crib=")
+                   || option.startsWith("--bombe=")) {
+            _bombe = option.startsWith("--bombe=");
+            String crib = option.substring(option.indexOf('=') + 1);
+            int at = crib.lastIndexOf('@');
+            if (at >= 0) {
+                try {
+                    _cribOffset = Integer.parseInt(crib.substring(at + 1));
+                } catch (NumberFormatException excp) {
+                    throw error("bad crib offset in %s", option);
+                }
+                crib = crib.substring(0, at);
+            }
+            _crib = crib.toUpperCase();
+        } else if (option.startsWith("--scan=")) {
+            _scan = option.substring(7).toUpperCase().split(",");
+        } else if (option.startsWith("--attack=")) {
+            _corpus = option.substring(9);
+        } else if (option.startsWith("--serve=")) {
+            try {
+                _port = Integer.parseInt(option.substring(8));
+            } catch (NumberFormatException excp) {
+                _port = -1;
+            }
+            if (_port < 0 || _port > MAX_PORT) {
+                throw error("bad port in %s", option);
+            }
+        } else {
+            throw error("unknown option %s", option);
+        }
+    }
+
+    /** Return the contents of the file named NAME. */
+    private byte[] readFile(String name) {
         try {
-            return new Scanner(new File(name2));
+            return Files.readAllBytes(Paths.get(name));
         } catch (IOException excp) {
-            throw error("could not open %s", name2);
+            throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME.
-     * @param name1 */
-    private PrintStream getOutput(String name1) {
+    /** Return a channel reading from the file named NAME. */
+    private ReadableByteChannel getChannel(String name) {
         try {
-            return new PrintStream(new File(name1));
+            return FileChannel.open(Paths.get(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a channel writing to the file named NAME1, which is emptied
+     *  first unless resuming (see Pipeline.resume). */
+    private WritableByteChannel getOutput(String name1) {
+        try {
+            if (_resuming) {
+                return FileChannel.open(Paths.get(name1),
+                                        StandardOpenOption.WRITE);
+            }
+            return FileChannel.open(Paths.get(name1),
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.TRUNCATE_EXISTING);
         } catch (IOException excp) {
             throw error("could not open %s", name1);
         }
@@ -81,33 +290,242 @@ public final class Main {
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
-    private void process() {
-        Machine newM = readConfig();
-        if (!_input.hasNext("[*]")) {
-            throw new EnigmaException("wrong input format");
-        }
-        String nextL = _input.nextLine();
-        while (_input.hasNext()) {
-            String setting = nextL;
-            if (!setting.contains("*")) {
-                throw new EnigmaException("Wrong setting format");
-            }
-            setUp(newM, setting);
-            nextL = (_input.nextLine()).toUpperCase();
-            while (!nextL.contains("*")) {
-                String outm = newM.convert(nextL.replaceAll(" ", ""));
-                if (nextL.isEmpty()) {
-                    _output.println();
-                } else {
-                    printMessageLine(outm);
-                }
-                if (!_input.hasNext()) {
-                    nextL = "*";
+    void process() {
+        long start = System.nanoTime();
+        Machine newM = loadConfig();
+        EnigmaStats stats = null;
+        if (_statsWanted) {
+            stats = new EnigmaStats(newM.numRotors());
+            stats.time(EnigmaStats.Stage.PARSE, System.nanoTime() - start);
+            stats.registerLater();
+            newM.setStats(stats);
+        }
+        try {
+            if (_port >= 0) {
+                serve(newM);
+            } else if (_scan != null) {
+                scan();
+            } else if (_crib != null) {
+                searchCrib(newM);
+            } else if (_corpus != null) {
+                attack(newM);
+            } else if (_batch) {
+                batch(newM);
+            } else {
+                convert(newM);
+            }
+            System.out.flush();
+            if (stats != null) {
+                stats.report(System.err, System.nanoTime() - start);
+            }
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Convert each of _batchInputs with M, as for --batch. */
+    private void batch(Machine M) throws IOException {
+        M.setComposite(true);
+        KeystreamCache cache = cache();
+        int failures = new BatchProcessor(M, threads(), cache)
+            .process(BatchProcessor.inputs(_batchInputs), _batchDir,
+                     _output, System.err);
+        reportCache(cache);
+        if (failures > 0) {
+            throw error("%d input files in error", failures);
+        }
+    }
+
+    /** Convert the messages in _input with M, writing them to _output. */
+    private void convert(Machine M) throws IOException {
+        M.setComposite(true);
+        KeystreamCache cache = cache();
+        if (_parallelism > 1) {
+            ParallelPipeline pipeline = new ParallelPipeline(M, _parallelism);
+            pipeline.setCache(cache);
+            pipeline.process(_input, _output);
+        } else {
+            Pipeline pipeline = new Pipeline(M);
+            pipeline.setCache(cache);
+            if (_checkpoint == null) {
+                pipeline.process(_input, _output);
+            } else {
+                String tag = checkpointTag();
+                pipeline.setCheckpoints(_checkpoint,
+                                        Checkpoint.DEFAULT_INTERVAL, tag);
+                if (_resuming) {
+                    resume(pipeline, tag, M.numRotors());
                 } else {
-                    nextL = (_input.nextLine()).toUpperCase();
+                    pipeline.process(_input, _output);
                 }
             }
         }
+        reportCache(cache);
+    }
+
+    /** Resume converting _input with PIPELINE from the checkpoint in
+     *  _checkpoint, which must be tagged TAG and be for a machine with
+     *  NUMROTORS slots. */
+    private void resume(Pipeline pipeline, String tag, int numRotors)
+        throws IOException {
+        Checkpoint from = Checkpoint.read(_checkpoint, numRotors);
+        if (!from.tag().equals(tag)) {
+            throw error("%s was saved by another job, with another "
+                        + "configuration, input, or output", _checkpoint);
+        }
+        pipeline.resume((FileChannel) _input, (FileChannel) _output, from);
+    }
+
+    /** Return the tag identifying checkpoints of my job: the digest of my
+     *  configuration, in hex, the real paths of my input and output
+     *  files, and the size of my input. */
+    private String checkpointTag() throws IOException {
+        StringBuilder result = new StringBuilder();
+        for (byte b : ConfigSnapshot.digest(_configText)) {
+            result.append(String.format("%02x", b));
+        }
+        result.append(' ').append(_inputFile.toRealPath())
+            .append(' ').append(_outputFile.toRealPath())
+            .append(' ').append(((FileChannel) _input).size());
+        return result.toString();
+    }
+
+    /** Return a new keystream cache as specified by --cache, or null if
+     *  not caching. */
+    private KeystreamCache cache() {
+        if (_cacheSize == 0) {
+            return null;
+        }
+        return new KeystreamCache(_cacheSize, KeystreamCache.DEFAULT_LENGTH);
+    }
+
+    /** Report the hits and misses of CACHE, if not null, on the standard
+     *  error. */
+    private void reportCache(KeystreamCache cache) {
+        if (cache != null) {
+            System.err.printf("keystream cache: %d hits, %d misses%n",
+                              cache.hits(), cache.misses());
+        }
+    }
+
+    /** Search for the keys with which M's rotors encrypt _crib as part of
+     *  the ciphertext in _input (with an unknown plugboard if _bombe),
+     *  writing their settings lines to _output. */
+    private void searchCrib(Machine M) throws IOException {
+        List<String> keys;
+        if (_bombe) {
+            keys = new BombeSearch(M, threads())
+                .search(readCiphertext(), _crib, _cribOffset, System.err);
+        } else {
+            keys = new CribSearch(M, new Permutation("", _alphabet), threads())
+                .search(readCiphertext(), _crib, _cribOffset, System.err);
+        }
+        StringBuilder found = new StringBuilder();
+        for (String key : keys) {
+            found.append(key).append(System.lineSeparator());
+        }
+        write(found.toString());
+    }
+
+    /** Serve requests for machines like M on _port until killed. */
+    private void serve(Machine M) throws IOException {
+        try (EnigmaServer server =
+             new EnigmaServer(new MachineDefinition(M), _port)) {
+            System.err.printf("listening on port %d%n", server.port());
+            server.serve();
+        }
+    }
+
+    /** Write a line for each crib in _scan to _output, giving the crib and
+     *  the offsets at which it may lie in the ciphertext in _input. */
+    private void scan() throws IOException {
+        Map<String, int[]> found = new CribScanner(_alphabet)
+            .scan(readCiphertext(), Arrays.asList(_scan));
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, int[]> entry : found.entrySet()) {
+            result.append(entry.getKey());
+            for (int offset : entry.getValue()) {
+                result.append(' ').append(offset);
+            }
+            result.append(System.lineSeparator());
+        }
+        write(result.toString());
+    }
+
+    /** Find the most probable key for the ciphertext in _input, given the
+     *  sample of its language in file _corpus, using M's rotors.  Write
+     *  its settings line and the decrypted message to _output. */
+    private void attack(Machine M) throws IOException {
+        String corpus = new String(Files.readAllBytes(Paths.get(_corpus)));
+        NgramTable ngrams =
+            new NgramTable(_alphabet, NgramTable.maxOrder(_alphabet, 4),
+                           corpus);
+        String cipher = readCiphertext();
+        String key = new CiphertextAttack(M, ngrams, threads())
+            .attack(cipher, System.err);
+        setUp(M, key);
+        String plain = M.convert(cipher);
+        StringBuilder result = new StringBuilder(key);
+        result.append(System.lineSeparator());
+        for (int i = 0; i < plain.length(); i += Pipeline.GROUP) {
+            if (i > 0) {
+                result.append(' ');
+            }
+            result.append(plain, i,
+                          Math.min(i + Pipeline.GROUP, plain.length()));
+        }
+        write(result.append(System.lineSeparator()).toString());
+    }
+
+    /** Return the non-blank characters of _input, upper-cased. */
+    private String readCiphertext() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(Pipeline.BUFFER_SIZE);
+        while (_input.read(buffer) >= 0) {
+            bytes.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+        StringBuilder cipher = new StringBuilder();
+        for (char ch : bytes.toString().toCharArray()) {
+            if (!Character.isWhitespace(ch)) {
+                cipher.append(Character.toUpperCase(ch));
+            }
+        }
+        return cipher.toString();
+    }
+
+    /** Write TEXT to _output. */
+    private void write(String text) throws IOException {
+        ByteBuffer out = ByteBuffer.wrap(text.getBytes());
+        while (out.hasRemaining()) {
+            _output.write(out);
+        }
+    }
+
+    /** Return the number of threads to use for a key search. */
+    private int threads() {
+        return _parallelism > 0 ? _parallelism
+            : Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Return an Enigma machine configured from the configuration file.
+     *  With --snapshots, use its compiled snapshot if there is one, and
+     *  otherwise parse it and save a snapshot for next time. */
+    private Machine loadConfig() {
+        Machine result;
+        if (_snapshotDir == null) {
+            result = readConfig();
+        } else {
+            ConfigSnapshot snapshots = new ConfigSnapshot(_snapshotDir);
+            byte[] digest = ConfigSnapshot.digest(_configText);
+            result = snapshots.read(digest);
+            if (result == null) {
+                result = readConfig();
+                snapshots.write(digest, result);
+            }
+        }
+        _alphabet = result.alphabet();
+        return result;
     }
 
     /** Return an Enigma machine configured from the contents of configuration
@@ -127,20 +545,23 @@ public final class Main {
                 throw new EnigmaException("no pawl quantity");
             }
             int pawls = _config.nextInt();
+            RotorCatalog catalog = new RotorCatalog(_alphabet);
             temp = (_config.next()).toUpperCase();
             while (_config.hasNext()) {
                 name = temp;
                 notches = (_config.next()).toUpperCase();
-                _allRotors.add(readRotor());
+                readRotor(catalog);
             }
-            return new Machine(_alphabet, numRotors, pawls, _allRotors);
+            return new Machine(_alphabet, numRotors, pawls, catalog);
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
+    /** Add to CATALOG a rotor, reading its description from _config.
+     *  The rotor's permutation is only parsed, and any error in it only
+     *  reported, when the rotor is first inserted. */
+    private void readRotor(RotorCatalog catalog) {
         try {
             perm = "";
             temp = (_config.next().toUpperCase());
@@ -153,15 +574,10 @@ public final class Main {
                 }
             }
 
-            if (notches.charAt(0) == 'M') {
-                String notcheplaces = notches.substring(1);
-                return new MovingRotor(name,
-                        new Permutation(perm, _alphabet), notcheplaces);
-            } else if (notches.charAt(0) == 'R') {
-                return new Reflector(name, new Permutation(perm, _alphabet));
-            } else {
-                return new FixedRotor(name, new Permutation(perm, _alphabet));
-            }
+            char kind = notches.charAt(0);
+            catalog.add(new RotorCatalog.Spec(
+                kind == 'M' || kind == 'R' ? kind : 'N', name, perm,
+                notches.substring(1)));
         } catch (NoSuchElementException excp) {
             throw error("bad rotor description");
         }
@@ -169,72 +585,92 @@ public final class Main {
 
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        Scanner reader = new Scanner(settings);
-        String[] rotors = new String[M.numRotors()];
-        String starting;
-        String plugboard = "";
-        if (!reader.hasNext("[*]")) {
-            throw new EnigmaException("bad input format");
-        }
-        reader.next();
-        for (int i = 0; i < M.numRotors(); i++) {
-            rotors[i] = reader.next();
-        }
-
-        for (int i = 0; i < rotors.length - 1; i++) {
-            for (int j = i + 1; j < rotors.length; j++) {
-                if (rotors[i].equals(rotors[j])) {
-                    throw new EnigmaException("Repeated Rotor");
-                }
-            }
-        }
-        M.insertRotors(rotors);
+    static void setUp(Machine M, String settings) {
+        SettingsLine line = new SettingsLine(settings, M.numRotors());
+        M.insertRotors(line.rotors());
         if (!M.getRotorList()[0].reflecting()) {
             throw new EnigmaException("First Rotor should be a reflector");
         }
-        starting = reader.next();
-        M.setRotors(starting);
-        if (starting.length() != rotors.length - 1) {
-            throw new EnigmaException("settings string not the right length.");
-        }
-
-        String temp1;
-        while (reader.hasNext()) {
-            temp1 = reader.next();
-            plugboard = plugboard.concat(temp1 + " ");
-        }
-        Permutation plug = new Permutation(plugboard, _alphabet);
-        M.setPlugboard(plug);
-    }
-
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        for (int i = 0; i < msg.length(); i += 5) {
-            int cap = msg.length() - i;
-            if (cap <= 5) {
-                _output.println(msg.substring(i, i + cap));
-            } else {
-                _output.print(msg.substring(i, i + 5) + " ");
-            }
-        }
+        M.setRotors(line.positions());
+        M.setPlugboard(new Permutation(line.plugboard(), M.alphabet()));
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
-
-    /** copy int */
-    private Scanner _input2;
+    private ReadableByteChannel _input;
 
     /** Source of machine configuration. */
-    private Scanner _config;
+    private ConfigScanner _config;
+
+    /** Text of the machine configuration. */
+    private byte[] _configText;
+
+    /** Default directory of compiled configuration snapshots, private to
+     *  the user. */
+    private static final Path SNAPSHOT_DIR =
+        Paths.get(System.getProperty("user.home"), ".cache",
+                  "enigma-snapshots");
+
+    /** Directory of configuration snapshots (--snapshots), or null if
+     *  not using them. */
+    private Path _snapshotDir;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private WritableByteChannel _output;
+
+    /** Number of threads converting messages, or 0 if not specified. */
+    private int _parallelism;
+
+    /** The crib to search for, or null if not searching. */
+    private String _crib;
+
+    /** Cribs to scan for, or null if not scanning. */
+    private String[] _scan;
+
+    /** True iff searching for _crib with an unknown plugboard. */
+    private boolean _bombe;
+
+    /** Position of _crib in the ciphertext. */
+    private int _cribOffset;
+
+    /** Name of the sample text for --attack, or null if not attacking. */
+    private String _corpus;
+
+    /** File in which to save checkpoints (--checkpoint), or null. */
+    private Path _checkpoint;
+
+    /** True iff resuming from a checkpoint if there is one (--resume). */
+    private boolean _resume;
+
+    /** True iff resuming from the checkpoint in _checkpoint. */
+    private boolean _resuming;
+
+    /** Input and output files, when saving checkpoints. */
+    private Path _inputFile, _outputFile;
+
+    /** True iff collecting statistics (--stats). */
+    private boolean _statsWanted;
+
+    /** True iff converting many files (--batch). */
+    private boolean _batch;
+
+    /** Directory for the results of --batch, or null for the standard
+     *  output. */
+    private Path _batchDir;
+
+    /** Names of the input files and directories for --batch. */
+    private List<String> _batchInputs;
+
+    /** Number of keystreams to cache, or 0 if not caching. */
+    private int _cacheSize;
+
+    /** Port on which to serve requests, or -1 if not serving. */
+    private int _port = -1;
+
+    /** Largest TCP port number. */
+    private static final int MAX_PORT = 65535;
 
     /** String for the perm cycle. */
     private  String perm;
@@ -247,7 +683,4 @@ public final class Main {
 
     /** notches of current rotor. */
     private String notches;
-
-    /** An ArrayList of ALL usable rotors. */
-    private ArrayList<Rotor> _allRotors = new ArrayList<>();
 }
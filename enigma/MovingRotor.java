@@ -24,12 +24,29 @@ class MovingRotor extends Rotor {
     }
     @Override
     boolean atNotch() {
-        for (int p = 0; p < allnotches.length(); p++) {
-            if (this.setting() == alphabet().toInt(allnotches.charAt(p))) {
-                return true;
+        return notchAt(setting());
+    }
+
+    @Override
+    boolean notchAt(int posn) {
+        long[] bits = notchBits();
+        return (bits[posn >>> 6] & (1L << posn)) != 0;
+    }
+
+    /** Return my notches as a bitmap: bit P (bit P % 64 of word P / 64)
+     *  is set iff I have a notch at position P.  Built on first use, so
+     *  that a notch outside the alphabet is reported only if I am
+     *  used. */
+    long[] notchBits() {
+        if (_notchBits == null) {
+            long[] bits = new long[(size() + Long.SIZE - 1) / Long.SIZE];
+            for (int p = 0; p < allnotches.length(); p++) {
+                int posn = alphabet().toInt(allnotches.charAt(p));
+                bits[posn >>> 6] |= 1L << posn;
             }
+            _notchBits = bits;
         }
-        return false;
+        return _notchBits;
     }
 
     @Override
@@ -37,9 +54,20 @@ class MovingRotor extends Rotor {
         set(permutation().wrap(setting() + 1));
     }
 
+    @Override
+    Rotor copy() {
+        MovingRotor result =
+            new MovingRotor(name(), permutation(), allnotches);
+        result._notchBits = _notchBits;
+        result.set(setting());
+        return result;
+    }
+
     /** String containing notches of the rotor. */
     private String allnotches;
     /** String containing notches of the rotor. */
     private Permutation _permutation;
+    /** Bitmap of notch positions, or null if not yet built. */
+    private long[] _notchBits;
 
 }
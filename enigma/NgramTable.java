@@ -0,0 +1,98 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A table of log probabilities of the n-grams (sequences of n characters)
+ *  of a language, for scoring candidate decryptions.  The table is a flat
+ *  array indexed by n-gram, where the n-gram C1 C2 ... Cn (as alphabet
+ *  indices) has index ((C1 * size + C2) * size + ...) * size + Cn.
+ *  @author Jerome
+ */
+class NgramTable {
+
+    /** A table of the N-grams of ALPHA in CORPUS, a sample of the
+     *  language.  Characters of CORPUS are upper-cased, and those not in
+     *  ALPHA are skipped. */
+    NgramTable(Alphabet alpha, int n, CharSequence corpus) {
+        int size = alpha.size();
+        long entries = CribSearch.power(size, n);
+        if (n < 1 || entries > MAX_ENTRIES) {
+            throw error("cannot make %d-gram table for %d characters",
+                        n, size);
+        }
+        _size = size;
+        _n = n;
+        _modulus = (int) (entries / size);
+        int[] counts = new int[(int) entries];
+        long total = 0;
+        int idx = 0, have = 0;
+        for (int i = 0; i < corpus.length(); i += 1) {
+            char ch = Character.toUpperCase(corpus.charAt(i));
+            if (!alpha.contains(ch)) {
+                continue;
+            }
+            idx = (idx % _modulus) * size + alpha.toInt(ch);
+            have += 1;
+            if (have >= n) {
+                counts[idx] += 1;
+                total += 1;
+            }
+        }
+        if (total == 0) {
+            throw error("corpus has no %d-grams", n);
+        }
+        _logProb = new float[counts.length];
+        float floor = (float) Math.log10(FLOOR / total);
+        for (int k = 0; k < counts.length; k += 1) {
+            _logProb[k] = counts[k] == 0 ? floor
+                : (float) Math.log10((double) counts[k] / total);
+        }
+    }
+
+    /** Return the largest N <= MAXN for which an N-gram table of ALPHA is
+     *  allowed. */
+    static int maxOrder(Alphabet alpha, int maxN) {
+        int n = maxN;
+        while (n > 1 && CribSearch.power(alpha.size(), n) > MAX_ENTRIES) {
+            n -= 1;
+        }
+        return n;
+    }
+
+    /** Return n, the length of my n-grams. */
+    int order() {
+        return _n;
+    }
+
+    /** Return the sum of the log probabilities of the n-grams of the first
+     *  LEN characters of TEXT (alphabet indices). */
+    double score(int[] text, int len) {
+        if (len < _n) {
+            return 0;
+        }
+        int idx = 0;
+        for (int i = 0; i < _n - 1; i += 1) {
+            idx = idx * _size + text[i];
+        }
+        double result = 0;
+        for (int i = _n - 1; i < len; i += 1) {
+            idx = (idx % _modulus) * _size + text[i];
+            result += _logProb[idx];
+        }
+        return result;
+    }
+
+    /** The largest number of entries allowed in a table. */
+    static final int MAX_ENTRIES = 1 << 24;
+    /** Count assumed for n-grams that do not occur in the corpus. */
+    private static final double FLOOR = 0.01;
+
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Length of the n-grams. */
+    private final int _n;
+    /** Number of (n-1)-grams. */
+    private final int _modulus;
+    /** Log (base 10) probability of each n-gram. */
+    private final float[] _logProb;
+}
@@ -0,0 +1,303 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A pipeline that encrypts independent segments of its input in
+ *  parallel.  Since each settings line completely resets the machine, the
+ *  input is cut just before every settings line, and each segment is
+ *  converted by a Pipeline with its own copy of the machine on a
+ *  fork-join pool.  Long segments are further cut into chunks at line
+ *  boundaries, each chunk starting from the machine state computed by
+ *  Machine.skip.  Converted chunks are written in input order, and at
+ *  most a few per thread are held in memory at once.  Message characters
+ *  are counted as non-blank bytes that do not continue a UTF-8 sequence,
+ *  so the charset must be UTF-8 or ASCII.  A segment can be cut only
+ *  between lines, so one that grows to MAX_SEGMENT bytes without an end
+ *  of line at which to cut it is not held in memory: the rest of the
+ *  input is converted by a single Pipeline instead.
+ *  @author Jerome
+ */
+class ParallelPipeline {
+
+    /** A pipeline that converts segments on PARALLELISM threads, each using
+     *  a copy of PROTOTYPE. */
+    ParallelPipeline(Machine prototype, int parallelism) {
+        this(prototype, parallelism, MAX_SEGMENT);
+    }
+
+    /** A pipeline as above, that holds at most MAXSEGMENT bytes of a
+     *  segment in memory. */
+    ParallelPipeline(Machine prototype, int parallelism, int maxSegment) {
+        _prototype = prototype;
+        _parallelism = parallelism;
+        _maxSegment = maxSegment;
+    }
+
+    /** Have each thread's pipeline use keystreams from CACHE (none if
+     *  null), as for Pipeline.setCache. */
+    void setCache(KeystreamCache cache) {
+        _cache = cache;
+    }
+
+    /** Process all of INPUT as for Pipeline.process, writing the results
+     *  to OUTPUT. */
+    void process(ReadableByteChannel input, WritableByteChannel output)
+        throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(_parallelism);
+        ThreadLocal<Pipeline> pipelines =
+            ThreadLocal.withInitial(() -> {
+                Pipeline pipeline = new Pipeline(_prototype.copy());
+                pipeline.setCache(_cache);
+                return pipeline;
+            });
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+        try {
+            ByteBuffer in = ByteBuffer.allocate(Pipeline.BUFFER_SIZE);
+            while (input.read(in) >= 0) {
+                in.flip();
+                while (in.hasRemaining()) {
+                    byte b = in.get();
+                    if (_atLineStart && b == '*') {
+                        cutSegment(pool, pipelines, pending, output, true);
+                        _lineIsSettings = true;
+                    }
+                    append(b);
+                    if (_length >= _maxSegment) {
+                        finish(pending, output, in, input);
+                        return;
+                    }
+                    if (b == '\n') {
+                        endLine(pool, pipelines, pending, output);
+                    } else if (!isBlank(b)) {
+                        _atLineStart = false;
+                        if (!_lineIsSettings && (b & 0xC0) != 0x80) {
+                            _lineKeys += 1;
+                        }
+                    }
+                }
+                in.clear();
+            }
+            if (!_seenSettings) {
+                throw error("wrong input format");
+            }
+            _lineStart = _length;
+            cutSegment(pool, pipelines, pending, output, false);
+            while (!pending.isEmpty()) {
+                writeResult(pending.removeFirst(), output);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Finish the line just appended to the current segment.  If the
+     *  segment has grown long and the line is not blank, schedule what
+     *  there is of it on POOL as a chunk (as for cutSegment).  The next
+     *  chunk repeats the segment's settings line and skips the machine
+     *  past the characters already scheduled, so that one long message is
+     *  converted in parallel.  Since a chunk never ends with blank lines,
+     *  whether they give output (see Pipeline) does not depend on where
+     *  the segment is cut. */
+    private void endLine(ForkJoinPool pool, ThreadLocal<Pipeline> pipelines,
+                         ArrayDeque<Future<byte[]>> pending,
+                         WritableByteChannel output) throws IOException {
+        if (_lineIsSettings) {
+            _settingsEnd = _length;
+        } else {
+            _keys += _lineKeys;
+        }
+        boolean blank = _atLineStart;
+        _atLineStart = true;
+        _lineIsSettings = false;
+        _lineKeys = 0;
+        _lineStart = _length;
+        if (_seenSettings && !blank && _length >= CHUNK_SIZE) {
+            byte[] body = Arrays.copyOf(_segment, _length);
+            schedule(pool, pipelines, pending, output, _header, body,
+                     _skipped, true);
+            if (_header == null) {
+                _header = Arrays.copyOf(_segment, _settingsEnd);
+            }
+            _skipped += _keys;
+            _keys = 0;
+            _length = _lineStart = 0;
+        }
+    }
+
+    /** Cut the segment accumulated so far just before the current line
+     *  and schedule it on POOL, using a pipeline from PIPELINES.  Append
+     *  its result to PENDING, first writing finished results to OUTPUT if
+     *  too many are outstanding.  MORE indicates that the current line is
+     *  not blank (see Pipeline.process). */
+    private void cutSegment(ForkJoinPool pool,
+                            ThreadLocal<Pipeline> pipelines,
+                            ArrayDeque<Future<byte[]>> pending,
+                            WritableByteChannel output, boolean more)
+        throws IOException {
+        byte[] segment = Arrays.copyOf(_segment, _lineStart);
+        int rest = _length - _lineStart;
+        System.arraycopy(_segment, _lineStart, _segment, 0, rest);
+        _length = rest;
+        _lineStart = 0;
+        if (!_seenSettings) {
+            _seenSettings = true;
+            for (byte b : segment) {
+                if (!isBlank(b)) {
+                    throw error("wrong input format");
+                }
+            }
+            return;
+        }
+        schedule(pool, pipelines, pending, output, _header, segment,
+                 _skipped, more);
+        _header = null;
+        _skipped = _keys = 0;
+    }
+
+    /** Schedule the conversion of HEADER (if not null) followed by BODY on
+     *  POOL, skipping SKIP characters after the first settings line, as
+     *  for cutSegment.  MORE indicates that a line that is not blank
+     *  follows BODY.  HEADER, a settings line already counted with the
+     *  chunk before, is not counted again in statistics. */
+    private void schedule(ForkJoinPool pool, ThreadLocal<Pipeline> pipelines,
+                          ArrayDeque<Future<byte[]>> pending,
+                          WritableByteChannel output, byte[] header,
+                          byte[] body, long skip, boolean more)
+        throws IOException {
+        byte[] text = body;
+        if (header != null) {
+            text = Arrays.copyOf(header, header.length + body.length);
+            System.arraycopy(body, 0, text, header.length, body.length);
+        }
+        byte[] chunk = text;
+        pending.addLast(pool.submit(() -> {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            pipelines.get().process(
+                Channels.newChannel(new ByteArrayInputStream(chunk)),
+                Channels.newChannel(result), skip, more, header != null);
+            return result.toByteArray();
+        }));
+        while (pending.size() > MAX_PENDING_PER_THREAD * _parallelism) {
+            writeResult(pending.removeFirst(), output);
+        }
+    }
+
+    /** Convert the rest of the input with one Pipeline, writing the
+     *  results to OUTPUT after those in PENDING: the current segment,
+     *  preceded by its settings line if part of it has already been
+     *  scheduled, then what is left of BUFFER, then the rest of INPUT. */
+    private void finish(ArrayDeque<Future<byte[]>> pending,
+                        WritableByteChannel output, ByteBuffer buffer,
+                        ReadableByteChannel input) throws IOException {
+        while (!pending.isEmpty()) {
+            writeResult(pending.removeFirst(), output);
+        }
+        byte[] header = _header == null ? new byte[0] : _header;
+        InputStream rest = new SequenceInputStream(
+            Collections.enumeration(Arrays.asList(
+                new ByteArrayInputStream(header),
+                new ByteArrayInputStream(_segment, 0, _length),
+                new ByteArrayInputStream(buffer.array(), buffer.position(),
+                                         buffer.remaining()),
+                Channels.newInputStream(input))));
+        Pipeline pipeline = new Pipeline(_prototype.copy());
+        pipeline.setCache(_cache);
+        pipeline.process(Channels.newChannel(rest), output, _skipped, false,
+                         _header != null);
+    }
+
+    /** Wait for RESULT and write it to OUTPUT. */
+    private void writeResult(Future<byte[]> result,
+                             WritableByteChannel output) throws IOException {
+        ByteBuffer bytes;
+        try {
+            bytes = ByteBuffer.wrap(result.get());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof EnigmaException) {
+                throw (EnigmaException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+        while (bytes.hasRemaining()) {
+            output.write(bytes);
+        }
+    }
+
+    /** Append B to the current segment. */
+    private void append(byte b) {
+        if (_length == _segment.length) {
+            _segment = Arrays.copyOf(_segment, 2 * _length);
+        }
+        _segment[_length] = b;
+        _length += 1;
+    }
+
+    /** Return true iff B is an ASCII whitespace byte, in the sense of
+     *  Character.isWhitespace. */
+    private static boolean isBlank(byte b) {
+        return b == ' ' || (b >= '\t' && b <= '\r')
+            || (b >= 0x1C && b <= 0x1F);
+    }
+
+    /** Maximum number of converted segments per thread awaiting output. */
+    private static final int MAX_PENDING_PER_THREAD = 4;
+    /** Segments are cut into chunks of about this many bytes. */
+    static final int CHUNK_SIZE = 1 << 20;
+    /** Default limit on the bytes of a segment held in memory. */
+    static final int MAX_SEGMENT = 64 * CHUNK_SIZE;
+
+    /** The machine whose copies convert the segments. */
+    private final Machine _prototype;
+    /** Source of keystreams shared by all threads, or null. */
+    private KeystreamCache _cache;
+    /** Number of worker threads. */
+    private final int _parallelism;
+    /** Limit on the bytes of a segment held in memory. */
+    private final int _maxSegment;
+    /** Bytes of the segment being accumulated. */
+    private byte[] _segment = new byte[Pipeline.BUFFER_SIZE];
+    /** Number of valid bytes in _segment. */
+    private int _length;
+    /** Index in _segment of the start of the current line. */
+    private int _lineStart;
+    /** True iff only blanks have been seen on the current line. */
+    private boolean _atLineStart = true;
+    /** True once the text preceding the first settings line is cut. */
+    private boolean _seenSettings;
+    /** True iff the current line is a settings line. */
+    private boolean _lineIsSettings;
+    /** Number of message characters on the current line. */
+    private long _lineKeys;
+    /** Number of message characters in complete lines of _segment. */
+    private long _keys;
+    /** Index in _segment of the end of the segment's settings line. */
+    private int _settingsEnd;
+    /** The current segment's settings line, once a chunk of the segment
+     *  has been scheduled; otherwise null. */
+    private byte[] _header;
+    /** Number of message characters in chunks of the current segment
+     *  already scheduled. */
+    private long _skipped;
+}
@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.Arrays;
 
 import static enigma.EnigmaException.*;
 
@@ -17,9 +18,69 @@ class Permutation {
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
         String holder = cycles.trim();
-        holder = holder.replace(")", "");
-        holder = holder.replace("(", "");
-        thecycles = holder.split(" ");
+        holder = holder.replace(")", " ");
+        holder = holder.replace("(", " ");
+        thecycles = holder.trim().split("\\s+");
+        compile();
+    }
+
+    /** Set this Permutation to the one taking each index P of ALPHABET to
+     *  FORWARD[P], which must be a permutation of 0 .. ALPHABET.size()-1. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        _alphabet = alphabet;
+        thecycles = new String[0];
+        if (forward.length != size()) {
+            throw error("permutation table has the wrong size");
+        }
+        _forward = forward.clone();
+        _inverse = new int[size()];
+        boolean[] reached = new boolean[size()];
+        for (int p = 0; p < size(); p += 1) {
+            int c = _forward[p];
+            if (c < 0 || c >= size() || reached[c]) {
+                throw error("permutation table is not a permutation");
+            }
+            reached[c] = true;
+            _inverse[c] = p;
+        }
+    }
+
+    /** A permutation of the indices of ALPHABET with tables FORWARD and
+     *  INVERSE, which must be inverses, and which are not copied. */
+    private Permutation(Alphabet alphabet, int[] forward, int[] inverse) {
+        _alphabet = alphabet;
+        thecycles = new String[0];
+        _forward = forward;
+        _inverse = inverse;
+    }
+
+    /** Fill in _forward and _inverse from thecycles, so that permute and
+     *  invert are single array lookups.  As with a scan of the cycles, the
+     *  first occurrence of a repeated character wins. */
+    private void compile() {
+        _forward = new int[size()];
+        _inverse = new int[size()];
+        for (int i = 0; i < size(); i += 1) {
+            _forward[i] = i;
+            _inverse[i] = i;
+        }
+        boolean[] mapped = new boolean[size()];
+        boolean[] reached = new boolean[size()];
+        for (String cycle : thecycles) {
+            for (int k = 0; k < cycle.length(); k += 1) {
+                int from = _alphabet.toInt(cycle.charAt(k));
+                int to = _alphabet.toInt(cycle.charAt((k + 1)
+                                                      % cycle.length()));
+                if (!mapped[from]) {
+                    mapped[from] = true;
+                    _forward[from] = to;
+                }
+                if (!reached[to]) {
+                    reached[to] = true;
+                    _inverse[to] = from;
+                }
+            }
+        }
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
@@ -29,8 +90,10 @@ class Permutation {
         for (int a = 0; a < thecycles.length; a++) {
             newC[a] = thecycles[a];
         }
-        newC[thecycles.length + 1] = cycle;
+        newC[thecycles.length] = cycle;
         thecycles = newC;
+        compile();
+        _cycles = null;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -62,35 +125,13 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char let = _alphabet.toChar(wrap(p));
-        char newlet = '0';
-        for (int a = 0; a < thecycles.length; a++) {
-            for (int b = 0; b < thecycles[a].length(); b++) {
-                if (thecycles[a].charAt(b) == let) {
-                    newlet = thecycles[a].charAt(mod((b + 1),
-                             thecycles[a].length()));
-                    return _alphabet.toInt(newlet);
-                }
-            }
-        }
-        return  p;
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char n = _alphabet.toChar(wrap(c));
-        char newChar = '0';
-        for (int q = 0; q < thecycles.length; q++) {
-            for (int w = 0; w < thecycles[q].length(); w++) {
-                if (thecycles[q].charAt(w) == n) {
-                    newChar = thecycles[q].charAt(mod((w - 1),
-                            thecycles[q].length()));
-                    return _alphabet.toInt(newChar);
-                }
-            }
-        }
-        return c;
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -114,15 +155,210 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        int cnt = 0;
-        int alphsize = _alphabet.size();
-        for (int r = 0; r < thecycles.length; r++) {
-            cnt += thecycles[r].length();
+        for (int i = 0; i < size(); i += 1) {
+            if (_forward[i] == i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the permutation that applies OTHER and then me, so that
+     *  compose(OTHER).permute(P) == permute(OTHER.permute(P)). */
+    Permutation compose(Permutation other) {
+        checkAlphabet(other);
+        int[] forward = new int[size()], inverse = new int[size()];
+        compose(_forward, other._forward, forward);
+        compose(other._inverse, _inverse, inverse);
+        return new Permutation(_alphabet, forward, inverse);
+    }
+
+    /** Return my inverse. */
+    Permutation inverse() {
+        return new Permutation(_alphabet, _inverse, _forward);
+    }
+
+    /** Return me applied K times (my inverse applied -K times if K is
+     *  negative), in time proportional to the alphabet size whatever K
+     *  is. */
+    Permutation power(long k) {
+        Cycles cycles = cycles();
+        int[] forward = new int[size()], inverse = new int[size()];
+        for (int c = 0; c < cycles._start.length - 1; c += 1) {
+            int start = cycles._start[c];
+            int len = cycles._start[c + 1] - start;
+            int shift = (int) Math.floorMod(k, (long) len);
+            for (int i = 0; i < len; i += 1) {
+                int from = cycles._elements[start + i];
+                int to = cycles._elements[start + (i + shift) % len];
+                forward[from] = to;
+                inverse[to] = from;
+            }
+        }
+        return new Permutation(_alphabet, forward, inverse);
+    }
+
+    /** Return my conjugate by G: the permutation taking G(P) to G(Q)
+     *  wherever I take P to Q, that is, G, composed with me, composed
+     *  with the inverse of G.  It has my cycle type. */
+    Permutation conjugate(Permutation g) {
+        checkAlphabet(g);
+        int[] forward = new int[size()], inverse = new int[size()];
+        for (int p = 0; p < size(); p += 1) {
+            int from = g._forward[p], to = g._forward[_forward[p]];
+            forward[from] = to;
+            inverse[to] = from;
+        }
+        return new Permutation(_alphabet, forward, inverse);
+    }
+
+    /** Return the lengths of my cycles, fixed points included, in
+     *  decreasing order.  Two permutations are conjugate iff they have
+     *  the same cycle type. */
+    int[] cycleType() {
+        Cycles cycles = cycles();
+        int n = cycles._start.length - 1;
+        int[] result = new int[n];
+        for (int c = 0; c < n; c += 1) {
+            result[c] = cycles._start[c + 1] - cycles._start[c];
         }
-        if (cnt == alphsize) {
+        Arrays.sort(result);
+        for (int i = 0, j = n - 1; i < j; i += 1, j -= 1) {
+            int t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Return my order: the least K > 0 such that power(K) is the
+     *  identity.  Throws ArithmeticException if it does not fit in a
+     *  long. */
+    long order() {
+        Cycles cycles = cycles();
+        long result = 1;
+        for (int c = 0; c < cycles._start.length - 1; c += 1) {
+            long len = cycles._start[c + 1] - cycles._start[c];
+            result = Math.multiplyExact(result / gcd(result, len), len);
+        }
+        return result;
+    }
+
+    /** Return a copy of my forward table: element P is permute(P). */
+    int[] toArray() {
+        return _forward.clone();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Permutation)) {
+            return false;
+        }
+        Permutation other = (Permutation) obj;
+        return Arrays.equals(_forward, other._forward)
+            && sameAlphabet(other);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_forward);
+    }
+
+    /** Set RESULT[P] to FIRST[SECOND[P]] for each P: the table of the
+     *  permutation applying SECOND and then FIRST.  RESULT must not be
+     *  FIRST or SECOND.  For loops that compose many permutations without
+     *  allocating. */
+    static void compose(int[] first, int[] second, int[] result) {
+        for (int p = 0; p < result.length; p += 1) {
+            result[p] = first[second[p]];
+        }
+    }
+
+    /** Set RESULT to the inverse of the permutation table PERM.  RESULT
+     *  must not be PERM. */
+    static void invert(int[] perm, int[] result) {
+        for (int p = 0; p < perm.length; p += 1) {
+            result[perm[p]] = p;
+        }
+    }
+
+    /** Return the greatest common divisor of A and B, both positive. */
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /** Throw an EnigmaException unless OTHER has my alphabet. */
+    private void checkAlphabet(Permutation other) {
+        if (!sameAlphabet(other)) {
+            throw error("permutations of different alphabets");
+        }
+    }
+
+    /** Return true iff OTHER's alphabet has the same characters as mine,
+     *  in the same order. */
+    private boolean sameAlphabet(Permutation other) {
+        if (other._alphabet == _alphabet) {
             return true;
         }
-        return false;
+        if (other.size() != size()) {
+            return false;
+        }
+        for (int k = 0; k < size(); k += 1) {
+            if (other._alphabet.toChar(k) != _alphabet.toChar(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return my cycle decomposition, computing it the first time. */
+    private Cycles cycles() {
+        Cycles result = _cycles;
+        if (result == null) {
+            result = new Cycles(_forward);
+            _cycles = result;
+        }
+        return result;
+    }
+
+    /** A cycle decomposition.  Its fields are final, so it may be shared
+     *  among threads without synchronization; at worst, two threads
+     *  compute the same one. */
+    private static final class Cycles {
+
+        /** The decomposition of the permutation with table FORWARD. */
+        Cycles(int[] forward) {
+            int n = forward.length;
+            _elements = new int[n];
+            int[] start = new int[n + 1];
+            boolean[] seen = new boolean[n];
+            int count = 0, k = 0;
+            for (int p = 0; p < n; p += 1) {
+                if (seen[p]) {
+                    continue;
+                }
+                start[count] = k;
+                count += 1;
+                for (int q = p; !seen[q]; q = forward[q]) {
+                    seen[q] = true;
+                    _elements[k] = q;
+                    k += 1;
+                }
+            }
+            start[count] = n;
+            _start = Arrays.copyOf(start, count + 1);
+        }
+
+        /** The elements of each cycle in turn, each in cycle order,
+         *  starting from its least element. */
+        private final int[] _elements;
+        /** Cycle C is _elements[_start[C] .. _start[C+1]-1]. */
+        private final int[] _start;
     }
 
     /** Alphabet of this permutation. */
@@ -130,4 +366,10 @@ class Permutation {
     /** An array of strings, each string is a cycle that tells
      * how a letter would be converted. */
     private String[] thecycles;
+    /** Forward table: _forward[P] is the result of permuting P. */
+    private int[] _forward;
+    /** Inverse table: _inverse[C] is the result of inverting C. */
+    private int[] _inverse;
+    /** My cycle decomposition, or null if not yet computed. */
+    private Cycles _cycles;
 }
@@ -55,6 +55,14 @@ public class PermutationTest {
         checkPerm("identity", UPPER_STRING, UPPER_STRING);
     }
 
+    @Test
+    public void checkNavalPermutations() {
+        for (String name : NAVALA_MAP.keySet()) {
+            perm = new Permutation(NAVALA.get(name), UPPER);
+            checkPerm(name, UPPER_STRING, NAVALA_MAP.get(name));
+        }
+    }
+
     @Test
     public void permuteInt() {
         Alphabet standard = new Alphabet("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
@@ -191,4 +199,91 @@ public class PermutationTest {
         assertEquals(11, testFive.invert(11));
     }
 
+
+    @Test
+    public void tableConstructorTest() {
+        Permutation p = new Permutation(new int[] {1, 2, 0, 3}, ALPHA4);
+        assertEquals(1, p.permute(0));
+        assertEquals(2, p.invert(0));
+        assertEquals(3, p.permute(3));
+        assertFalse(p.derangement());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void tableNotPermutationTest() {
+        new Permutation(new int[] {1, 1, 0, 3}, ALPHA4);
+    }
+
+    @Test
+    public void composeTest() {
+        Alphabet alphabet = new Alphabet(UPPER_STRING);
+        Permutation a = new Permutation("(ABC) (DE)", alphabet);
+        Permutation b = new Permutation("(AD) (BZ)", alphabet);
+        Permutation ab = a.compose(b);
+        for (int p = 0; p < 26; p += 1) {
+            assertEquals(a.permute(b.permute(p)), ab.permute(p));
+            assertEquals(p, ab.invert(ab.permute(p)));
+        }
+        assertEquals(new Permutation("", alphabet), a.compose(a.inverse()));
+        assertEquals(new Permutation("(ACB) (DE)", alphabet), a.inverse());
+    }
+
+    @Test
+    public void powerTest() {
+        Alphabet alphabet = new Alphabet(UPPER_STRING);
+        Permutation a = new Permutation("(ABCDE) (XY) (Q)", alphabet);
+        assertEquals(new Permutation("(ACEBD)", alphabet), a.power(2));
+        assertEquals(a.inverse(), a.power(-1));
+        assertEquals(a.compose(a).compose(a), a.power(3));
+        assertEquals(new Permutation("", alphabet), a.power(10));
+        assertEquals(a, a.power(10_000_000_001L));
+        assertEquals(10, a.order());
+        assertEquals(1, new Permutation("", alphabet).order());
+    }
+
+    @Test
+    public void conjugateTest() {
+        Alphabet alphabet = new Alphabet(UPPER_STRING);
+        Permutation a = new Permutation("(ABC) (DE)", alphabet);
+        Permutation g = new Permutation("(AZ) (DM) (BCX)", alphabet);
+        Permutation c = a.conjugate(g);
+        assertEquals(g.compose(a).compose(g.inverse()), c);
+        assertEquals(new Permutation("(ZCX) (ME)", alphabet), c);
+        assertArrayEquals(a.cycleType(), c.cycleType());
+    }
+
+    @Test
+    public void cycleTypeTest() {
+        Alphabet alphabet = new Alphabet(UPPER_STRING);
+        int[] type = new Permutation("(ABCDE) (XY) (FG)", alphabet)
+            .cycleType();
+        assertEquals(26 - 9 + 3, type.length);
+        assertEquals(5, type[0]);
+        assertEquals(2, type[1]);
+        assertEquals(2, type[2]);
+        assertEquals(1, type[type.length - 1]);
+        assertArrayEquals(new int[] {2, 2},
+                          new Permutation(new int[] {1, 0, 3, 2}, ALPHA4)
+                          .cycleType());
+    }
+
+    @Test
+    public void arrayComposeTest() {
+        int[] f = {1, 2, 0, 3}, g = {3, 2, 1, 0}, fg = new int[4];
+        Permutation.compose(f, g, fg);
+        assertArrayEquals(new int[] {3, 0, 2, 1}, fg);
+        int[] inverse = new int[4];
+        Permutation.invert(fg, inverse);
+        assertArrayEquals(new Permutation(fg, ALPHA4).inverse().toArray(),
+                          inverse);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void composeAlphabetsTest() {
+        new Permutation("(AB)", ALPHA4)
+            .compose(new Permutation("(AB)", new Alphabet("ABC")));
+    }
+
+    /** A four-character alphabet. */
+    private static final Alphabet ALPHA4 = new Alphabet("ABCD");
 }
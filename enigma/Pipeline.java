@@ -0,0 +1,533 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32C;
+
+import static enigma.EnigmaException.*;
+
+/** A streaming encryption pipeline.  Reads lines of input from a channel,
+ *  applies each settings line ("* ...") to a machine, and writes every
+ *  other line converted, with whitespace removed, in groups of five.
+ *  Work is done a buffer at a time, so memory use does not depend on the
+ *  size of the input or the length of its lines.  Lines are split at
+ *  '\n' bytes, so the charset must be ASCII-compatible (as UTF-8 is).
+ *  @author Jerome
+ */
+class Pipeline {
+
+    /** A pipeline that converts messages with MACHINE, reading and writing
+     *  the default charset. */
+    Pipeline(Machine machine) {
+        _machine = machine;
+        Charset charset = Charset.defaultCharset();
+        _decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /** Set up the machine for each settings line, and convert the start
+     *  of each message, using keystreams from CACHE (none if null). */
+    void setCache(KeystreamCache cache) {
+        _cache = cache;
+    }
+
+    /** Process all of INPUT, which must start with a settings line
+     *  (blank lines aside), writing the results to OUTPUT.  A pipeline
+     *  may be used for any number of inputs, one after the other. */
+    void process(ReadableByteChannel input, WritableByteChannel output)
+        throws IOException {
+        process(input, output, 0, false, false);
+    }
+
+    /** Process INPUT as for process(INPUT, OUTPUT), but advance the machine
+     *  by SKIP characters after applying the first settings line, as if
+     *  INPUT resumed a message SKIP characters in.  MORE indicates that
+     *  INPUT is part of a longer input in which a line that is not blank
+     *  follows it, so that empty lines at its end are written.  REPLAY
+     *  indicates that the first settings line repeats one already applied
+     *  for that longer input, so that it is not counted again in the
+     *  machine's statistics or the keystream cache's lookups. */
+    void process(ReadableByteChannel input, WritableByteChannel output,
+                 long skip, boolean more, boolean replay)
+        throws IOException {
+        start(output);
+        _skip = skip;
+        _more = more;
+        _replay = replay;
+        _configured = false;
+        _inputBase = _outputOffset = 0;
+        run(input);
+    }
+
+    /** Process INPUT and write OUTPUT from the state saved in FROM,
+     *  continuing a job that was stopped after saving it, so that OUTPUT
+     *  ends up as it would had the job not stopped.  INPUT is read from
+     *  the position FROM records, and OUTPUT is truncated to the length
+     *  FROM records and continued from there.  It is an error, caught
+     *  before OUTPUT is changed, if the input FROM records having read is
+     *  not that at the start of INPUT. */
+    void resume(FileChannel input, FileChannel output, Checkpoint from)
+        throws IOException {
+        if (from.input() > input.size() || from.output() > output.size()) {
+            throw error("checkpoint does not match input and output");
+        }
+        start(output);
+        ByteBuffer in = _inBytes;
+        for (long pos = 0; pos < from.input(); pos += in.position()) {
+            in.clear();
+            in.limit((int) Math.min(in.capacity(), from.input() - pos));
+            if (input.read(in, pos) < 0) {
+                break;
+            }
+            in.flip();
+            _inputHash.update(in);
+        }
+        if (_inputHash.getValue() != from.inputHash()) {
+            throw error("checkpoint does not match input");
+        }
+        for (int setting : from.rotors()) {
+            if (setting >= _machine.alphabet().size()) {
+                throw error("checkpoint does not match configuration");
+            }
+        }
+        _more = _replay = false;
+        Main.setUp(_machine, from.settings());
+        _machine.setSettings(from.rotors());
+        _settingsLine = from.settings();
+        _skip = 0;
+        _configured = true;
+        input.position(from.input());
+        output.truncate(from.output());
+        output.position(from.output());
+        _inputBase = _lastCheckpoint = from.input();
+        _outputOffset = from.output();
+        run(input);
+    }
+
+    /** Save a Checkpoint tagged TAG in FILE at the end of the first line
+     *  after each INTERVAL bytes of input, so that an interrupted job can
+     *  be resumed (see resume).  Checkpoints are saved only when FILE is
+     *  not null, and only by a pipeline writing to a FileChannel, which
+     *  is forced to storage before each checkpoint is saved.  FILE is
+     *  deleted when the input has been processed completely. */
+    void setCheckpoints(Path file, long interval, String tag) {
+        _checkpointFile = file;
+        _checkpointInterval = interval;
+        _checkpointTag = tag;
+    }
+
+    /** Prepare to write to OUTPUT from a new input. */
+    private void start(WritableByteChannel output) {
+        _output = output;
+        _stats = _machine.stats();
+        _state = LineKind.START;
+        _lineStarted = false;
+        _keystream = null;
+        _numPending = _column = _blankLines = 0;
+        _lastCheckpoint = 0;
+        _inputHash.reset();
+        _decoder.reset();
+        _encoder.reset();
+        _outChars.clear();
+        _outBytes.clear();
+    }
+
+    /** Process the rest of INPUT. */
+    private void run(ReadableByteChannel input) throws IOException {
+        ByteBuffer in = _inBytes;
+        in.clear();
+        while (input.read(in) >= 0) {
+            in.flip();
+            _hashed = 0;
+            scanLines(in);
+            hashInput(in, in.position());
+            _inputBase += in.position();
+            in.compact();
+        }
+        in.flip();
+        decode(in, true);
+        if (_lineStarted) {
+            endLine();
+        }
+        if (_more) {
+            blankLines();
+        }
+        if (!_configured) {
+            throw error("wrong input format");
+        }
+        long start = _stats == null ? 0 : System.nanoTime();
+        flush();
+        if (_stats != null) {
+            _stats.time(EnigmaStats.Stage.OUTPUT, System.nanoTime() - start);
+        }
+        if (_checkpointFile != null && _output instanceof FileChannel) {
+            Files.deleteIfExists(_checkpointFile);
+        }
+    }
+
+    /** Process the complete lines in IN, and decode as much of the
+     *  trailing partial line as possible, leaving any bytes of an
+     *  incomplete character in IN. */
+    private void scanLines(ByteBuffer in) throws IOException {
+        while (in.hasRemaining()) {
+            int limit = in.limit();
+            int nl = in.position();
+            while (nl < limit && in.get(nl) != '\n') {
+                nl += 1;
+            }
+            if (nl == limit) {
+                decode(in, false);
+                return;
+            }
+            in.limit(nl);
+            decode(in, true);
+            in.limit(limit);
+            in.position(nl + 1);
+            _decoder.reset();
+            endLine();
+            if (_checkpointFile != null && _configured && _blankLines == 0
+                && _inputBase + nl + 1 - _lastCheckpoint
+                   >= _checkpointInterval) {
+                hashInput(in, nl + 1);
+                checkpoint(_inputBase + nl + 1);
+            }
+        }
+    }
+
+    /** Decode the bytes in IN and process the resulting characters.
+     *  ENDOFLINE indicates that IN holds the rest of the current line. */
+    private void decode(ByteBuffer in, boolean endOfLine)
+        throws IOException {
+        if (in.hasRemaining()) {
+            _lineStarted = true;
+        }
+        while (true) {
+            CoderResult result = _decoder.decode(in, _chars, endOfLine);
+            _chars.flip();
+            lineChars(_chars);
+            _chars.clear();
+            if (!result.isOverflow()) {
+                return;
+            }
+        }
+    }
+
+    /** Process CHARS, which continue the current line. */
+    private void lineChars(CharBuffer chars) throws IOException {
+        while (chars.hasRemaining()) {
+            char ch = chars.get();
+            switch (_state) {
+            case START:
+            case BLANK:
+                if (Character.isWhitespace(ch)) {
+                    if (ch != '\r') {
+                        _state = LineKind.BLANK;
+                    }
+                    break;
+                }
+                blankLines();
+                if (ch == SettingsLine.MARK) {
+                    _state = LineKind.SETTINGS;
+                    _settings.setLength(0);
+                    _settings.append(ch);
+                } else if (!_configured) {
+                    throw error("wrong input format");
+                } else {
+                    _state = LineKind.MESSAGE;
+                    message(ch);
+                }
+                break;
+            case SETTINGS:
+                _settings.append(ch);
+                break;
+            default:
+                if (!Character.isWhitespace(ch)) {
+                    message(ch);
+                }
+                break;
+            }
+        }
+    }
+
+    /** Finish the current line. */
+    private void endLine() throws IOException {
+        switch (_state) {
+        case SETTINGS:
+            long start = _stats == null ? 0 : System.nanoTime();
+            boolean replay = _replay && !_configured;
+            _settingsLine = _settings.toString();
+            _keyPosition = 0;
+            if (_cache == null) {
+                Main.setUp(_machine, _settingsLine);
+                _keystream = null;
+            } else {
+                _keystream = _cache.setUp(_machine, _settingsLine, !replay);
+            }
+            if (!_configured && _skip > 0) {
+                _keyPosition = _skip;
+                if (_keystream == null || _skip >= _keystream.rows()) {
+                    _machine.skip(_skip);
+                    _keystream = null;
+                }
+            }
+            _configured = true;
+            if (_stats != null) {
+                if (!replay) {
+                    _stats.settingsReset();
+                }
+                _stats.time(EnigmaStats.Stage.SETUP,
+                            System.nanoTime() - start);
+            }
+            break;
+        case MESSAGE:
+            convertPending();
+            newline();
+            break;
+        case START:
+            if (_configured) {
+                _blankLines += 1;
+            }
+            break;
+        default:
+            break;
+        }
+        _state = LineKind.START;
+        _lineStarted = false;
+    }
+
+    /** Add IN[_hashed .. END-1], which have just been processed, to the
+     *  hash of the input, if saving checkpoints. */
+    private void hashInput(ByteBuffer in, int end) {
+        if (_checkpointFile != null) {
+            ByteBuffer bytes = in.duplicate();
+            bytes.limit(end).position(_hashed);
+            _inputHash.update(bytes);
+        }
+        _hashed = end;
+    }
+
+    /** Having processed the first INPUT bytes of input, write out all
+     *  output and save a checkpoint, if writing to a file. */
+    private void checkpoint(long input) throws IOException {
+        if (!(_output instanceof FileChannel)) {
+            return;
+        }
+        flush();
+        ((FileChannel) _output).force(false);
+        int[] rotors = _machine.settingsAfter(
+            _keystream == null ? 0 : _keyPosition);
+        new Checkpoint(_checkpointTag, input, _inputHash.getValue(),
+                       _outputOffset, _settingsLine,
+                       rotors).write(_checkpointFile);
+        _lastCheckpoint = input;
+    }
+
+    /** Add message character CH to the characters awaiting conversion. */
+    private void message(char ch) throws IOException {
+        _pending[_numPending] = messageChar(ch);
+        _numPending += 1;
+        if (_numPending == _pending.length) {
+            convertPending();
+        }
+    }
+
+    /** Return message character CH as it is converted: in upper case, so
+     *  that messages may be written in either. */
+    static char messageChar(char ch) {
+        return Character.toUpperCase(ch);
+    }
+
+    /** Convert the pending message characters and emit them in groups
+     *  of five. */
+    private void convertPending() throws IOException {
+        long start = _stats == null ? 0 : System.nanoTime();
+        int done = 0;
+        if (_keystream != null) {
+            done = _keystream.convert(_pending, 0, _numPending, _keyPosition);
+            _keystream.countAdvances(_machine, _keyPosition, done);
+            _keyPosition += done;
+            if (_keyPosition == _keystream.rows()) {
+                _keystream.finish(_machine);
+                _keystream = null;
+            }
+        }
+        _machine.convert(_pending, done, _numPending - done, _pending, done);
+        long converted = _stats == null ? 0 : System.nanoTime();
+        for (int i = 0; i < _numPending; i += 1) {
+            if (_column > 0 && _column % GROUP == 0) {
+                emit(' ');
+            }
+            emit(_pending[i]);
+            _column += 1;
+        }
+        if (_stats != null) {
+            _machine.flushStats();
+            _stats.converted(_numPending);
+            _stats.time(EnigmaStats.Stage.CONVERT, converted - start);
+            _stats.time(EnigmaStats.Stage.OUTPUT,
+                        System.nanoTime() - converted);
+        }
+        _numPending = 0;
+    }
+
+    /** Emit the empty lines held back in _blankLines. */
+    private void blankLines() throws IOException {
+        for (; _blankLines > 0; _blankLines -= 1) {
+            newline();
+        }
+    }
+
+    /** Emit a line separator and start a new output line. */
+    private void newline() throws IOException {
+        for (int i = 0; i < NEWLINE.length(); i += 1) {
+            emit(NEWLINE.charAt(i));
+        }
+        _column = 0;
+    }
+
+    /** Append CH to the output. */
+    private void emit(char ch) throws IOException {
+        if (!_outChars.hasRemaining()) {
+            drain();
+        }
+        _outChars.put(ch);
+    }
+
+    /** Encode and write all buffered output characters. */
+    private void drain() throws IOException {
+        _outChars.flip();
+        while (true) {
+            CoderResult result = _encoder.encode(_outChars, _outBytes, false);
+            writeBytes();
+            if (!result.isOverflow()) {
+                break;
+            }
+        }
+        _outChars.compact();
+    }
+
+    /** Write all of _outBytes to the output channel. */
+    private void writeBytes() throws IOException {
+        _outBytes.flip();
+        while (_outBytes.hasRemaining()) {
+            _outputOffset += _output.write(_outBytes);
+        }
+        _outBytes.clear();
+    }
+
+    /** Write out everything emitted so far. */
+    private void flush() throws IOException {
+        drain();
+        _outChars.flip();
+        _encoder.encode(_outChars, _outBytes, true);
+        _encoder.flush(_outBytes);
+        writeBytes();
+        _outChars.clear();
+        _encoder.reset();
+    }
+
+    /** The kinds of input line, as determined by their first
+     *  non-blank character. */
+    private enum LineKind {
+        /** Nothing seen yet but perhaps a carriage return. */
+        START,
+        /** Only blanks seen. */
+        BLANK,
+        /** A settings line, starting with '*'. */
+        SETTINGS,
+        /** A message line. */
+        MESSAGE
+    }
+
+    /** Size of the input, output, and pending-character buffers. */
+    static final int BUFFER_SIZE = 1 << 16;
+    /** Number of characters in an output group. */
+    static final int GROUP = 5;
+    /** Line separator written after each message line. */
+    private static final String NEWLINE = System.lineSeparator();
+
+    /** The machine doing the conversion. */
+    private final Machine _machine;
+    /** The machine's statistics, or null. */
+    private EnigmaStats _stats;
+    /** Source of keystreams, or null. */
+    private KeystreamCache _cache;
+    /** Keystream for the current settings, while it covers the next
+     *  keypress, and otherwise null. */
+    private KeystreamCache.Keystream _keystream;
+    /** Number of keypresses since the last settings line. */
+    private long _keyPosition;
+    /** Destination of converted messages. */
+    private WritableByteChannel _output;
+    /** Decoder for input bytes. */
+    private final CharsetDecoder _decoder;
+    /** Encoder for output characters. */
+    private final CharsetEncoder _encoder;
+    /** Raw input bytes. */
+    private final ByteBuffer _inBytes = ByteBuffer.allocate(BUFFER_SIZE);
+    /** Decoded input characters. */
+    private final CharBuffer _chars = CharBuffer.allocate(BUFFER_SIZE);
+    /** Output characters awaiting encoding. */
+    private final CharBuffer _outChars = CharBuffer.allocate(BUFFER_SIZE);
+    /** Encoded output bytes. */
+    private final ByteBuffer _outBytes = ByteBuffer.allocate(BUFFER_SIZE);
+    /** Message characters awaiting conversion. */
+    private final char[] _pending = new char[BUFFER_SIZE];
+    /** Number of valid characters in _pending. */
+    private int _numPending;
+    /** Text of the settings line being read. */
+    private final StringBuilder _settings = new StringBuilder();
+    /** Kind of the current line. */
+    private LineKind _state = LineKind.START;
+    /** True iff any bytes of the current line have been read. */
+    private boolean _lineStarted;
+    /** Number of empty lines read since the last line that was not blank.
+     *  As in the original Scanner-based Main, an empty line gives an
+     *  empty output line only if a line that is not blank follows it, and
+     *  a line of only blanks gives nothing. */
+    private int _blankLines;
+    /** True iff a line that is not blank follows the input (see
+     *  process). */
+    private boolean _more;
+    /** True iff the first settings line is a replay (see process). */
+    private boolean _replay;
+    /** True once a settings line has been applied. */
+    private boolean _configured;
+    /** The last settings line applied. */
+    private String _settingsLine;
+    /** CRC-32C of the input processed, if saving checkpoints. */
+    private final CRC32C _inputHash = new CRC32C();
+    /** Number of bytes at the start of _inBytes in _inputHash. */
+    private int _hashed;
+    /** Number of input bytes before the start of _inBytes. */
+    private long _inputBase;
+    /** Number of output bytes written. */
+    private long _outputOffset;
+    /** File in which to save checkpoints, or null. */
+    private Path _checkpointFile;
+    /** Number of input bytes between checkpoints. */
+    private long _checkpointInterval;
+    /** Tag of the checkpoints saved. */
+    private String _checkpointTag;
+    /** Input position of the last checkpoint. */
+    private long _lastCheckpoint;
+    /** Characters to skip after the first settings line. */
+    private long _skip;
+    /** Number of message characters written on the current output line. */
+    private int _column;
+}
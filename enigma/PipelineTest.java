@@ -0,0 +1,85 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Pipeline and ParallelPipeline
+ *  classes.
+ *  @author Jerome
+ */
+public class PipelineTest {
+
+    /** Settings line for the machines tested. */
+    private static final String SETTINGS = "* B Beta III II AXL (HQ) (EX)";
+
+    /** Line separator of the output. */
+    private static final String NL = System.lineSeparator();
+
+    /** Return the output of converting INPUT with navalMachine(4), on
+     *  PARALLELISM threads if it is greater than 1. */
+    private static String process(String input, int parallelism)
+        throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (parallelism > 1) {
+            new ParallelPipeline(navalMachine(4), parallelism)
+                .process(Channels.newChannel(
+                             new ByteArrayInputStream(input.getBytes())),
+                         Channels.newChannel(out));
+        } else {
+            new Pipeline(navalMachine(4))
+                .process(Channels.newChannel(
+                             new ByteArrayInputStream(input.getBytes())),
+                         Channels.newChannel(out));
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void blankLineTest() throws IOException {
+        Machine machine = navalMachine(4);
+        Main.setUp(machine, SETTINGS);
+        String hello = machine.convert("HELLO");
+        String world = machine.convert("WORLD");
+        Main.setUp(machine, SETTINGS);
+        String again = machine.convert("AGAIN");
+        String expected = hello + NL + NL + world + NL + NL + again + NL;
+        for (int threads = 1; threads <= 2; threads += 1) {
+            assertEquals(expected,
+                         process(SETTINGS + "\nHELLO\n\n   \nWORLD\n\n"
+                                 + SETTINGS + "\nAGAIN\n\n \t\n\n",
+                                 threads));
+            assertEquals(expected,
+                         process(SETTINGS + "\r\nHELLO\r\n\r\n \r\nWORLD"
+                                 + "\r\n\r\n" + SETTINGS + "\r\nAGAIN\r\n"
+                                 + "\r\n", threads));
+        }
+    }
+
+    @Test
+    public void longLineTest() throws IOException {
+        StringBuilder input = new StringBuilder(SETTINGS + "\n");
+        while (input.length() <= ParallelPipeline.CHUNK_SIZE) {
+            input.append("HELLO WORLD\n");
+        }
+        for (int k = 0; k < 3 * ParallelPipeline.CHUNK_SIZE / 5; k += 1) {
+            input.append("ABCDE");
+        }
+        input.append("\n\n" + SETTINGS + "\nAGAIN\n");
+        byte[] bytes = input.toString().getBytes();
+        String expected = process(input.toString(), 1);
+        for (int limit : new int[] { 1000, 2 * ParallelPipeline.CHUNK_SIZE }) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new ParallelPipeline(navalMachine(4), 2, limit)
+                .process(Channels.newChannel(new ByteArrayInputStream(bytes)),
+                         Channels.newChannel(out));
+            assertEquals(expected, out.toString());
+        }
+    }
+}
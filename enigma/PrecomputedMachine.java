@@ -0,0 +1,145 @@
+package enigma;
+
+import java.util.HashMap;
+
+/** A machine whose complete substitution for each rotor state it will
+ *  pass through is precomputed.  Starting from the current state of a
+ *  Machine, the substitution applied at each keypress is stored as one row
+ *  of a flat table, until either the rotor states start to repeat (so that
+ *  the whole stepping cycle is covered) or a limit on the size of the table
+ *  is reached.  Converting a character is then one index computation and
+ *  one lookup.  Past the end of a table that does not cover the cycle, and
+ *  when not even one row fits, conversion falls back to the machine
+ *  itself, jumped ahead to the right state.
+ *  @author Jerome
+ */
+class PrecomputedMachine {
+
+    /** Precompute the substitutions MACHINE will apply from its current
+     *  state on, storing at most MAXENTRIES table entries (one per alphabet
+     *  character per keypress).  MACHINE is left in its current state, and
+     *  should not otherwise be used while this object is. */
+    PrecomputedMachine(Machine machine, int maxEntries) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _start = machine.settingsAfter(0);
+
+        int maxRows = maxEntries / _size;
+        char[] table = new char[Math.min(maxRows, INITIAL_ROWS) * _size];
+        HashMap<Long, Integer> seen = new HashMap<>();
+        int rows = 0;
+        _cycleStart = -1;
+        while (rows < maxRows) {
+            machine.step();
+            long key = stateKey(machine.settingsAfter(0));
+            Integer previous = key < 0 ? null : seen.put(key, rows);
+            if (previous != null) {
+                _cycleStart = previous;
+                break;
+            }
+            if ((rows + 1) * _size > table.length) {
+                char[] bigger =
+                    new char[Math.min(maxRows, 2 * rows + 1) * _size];
+                System.arraycopy(table, 0, bigger, 0, rows * _size);
+                table = bigger;
+            }
+            for (int c = 0; c < _size; c += 1) {
+                table[rows * _size + c] = (char) machine.substitute(c);
+            }
+            rows += 1;
+        }
+        _rows = rows;
+        _table = table;
+        machine.setSettings(_start);
+    }
+
+    /** Return true iff my table covers every state the machine reaches, so
+     *  that conversion never falls back to the machine. */
+    boolean complete() {
+        return _cycleStart >= 0;
+    }
+
+    /** Return the number of keypresses my table covers before it either
+     *  repeats or ends. */
+    int rows() {
+        return _rows;
+    }
+
+    /** Return to the state from which I was precomputed, so that my table
+     *  can be used for another message with the same settings. */
+    void rewind() {
+        _position = 0;
+        if (_fellBack) {
+            _machine.setSettings(_start);
+            _fellBack = false;
+        }
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  the machine. */
+    int convert(int c) {
+        long t = _position;
+        _position += 1;
+        if (t < _rows) {
+            return _table[(int) t * _size + c];
+        } else if (_cycleStart >= 0) {
+            int period = _rows - _cycleStart;
+            int row = _cycleStart + (int) ((t - _cycleStart) % period);
+            return _table[row * _size + c];
+        }
+        if (!_fellBack) {
+            _machine.setSettings(_start);
+            _machine.skip(t);
+            _fellBack = true;
+        }
+        return _machine.convert(c);
+    }
+
+    /** Convert the LEN characters IN[OFF .. OFF+LEN-1] into
+     *  OUT[OUTOFF .. OUTOFF+LEN-1], as for Machine.convert. */
+    void convert(char[] in, int off, int len, char[] out, int outOff) {
+        for (int s = 0; s < len; s += 1) {
+            int changed = _alphabet.toInt(in[off + s]);
+            out[outOff + s] = _alphabet.toChar(convert(changed));
+        }
+    }
+
+    /** Return a key unique to the rotor SETTINGS, or -1 if there are too
+     *  many possible settings for a key to fit in a long. */
+    private long stateKey(int[] settings) {
+        long key = 0;
+        for (int j = 1; j < settings.length; j += 1) {
+            if (key > (Long.MAX_VALUE - settings[j]) / _size) {
+                return -1;
+            }
+            key = key * _size + settings[j];
+        }
+        return key;
+    }
+
+    /** Number of rows initially allocated, to avoid allocating the whole
+     *  limit for machines with short cycles. */
+    private static final int INITIAL_ROWS = 1024;
+
+    /** The machine whose substitutions I hold. */
+    private final Machine _machine;
+    /** The machine's alphabet. */
+    private final Alphabet _alphabet;
+    /** Size of the alphabet (the length of a table row). */
+    private final int _size;
+    /** Rotor settings when I was precomputed. */
+    private final int[] _start;
+    /** _table[T * _size + C] is the conversion of C at keypress T + 1. */
+    private final char[] _table;
+    /** Number of valid rows in _table. */
+    private final int _rows;
+    /** Row at which the stepping cycle restarts, or -1 if the table does
+     *  not cover the whole cycle. */
+    private int _cycleStart;
+    /** Number of keypresses so far. */
+    private long _position;
+    /** True iff conversion has fallen back to _machine. */
+    private boolean _fellBack;
+}
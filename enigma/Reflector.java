@@ -18,6 +18,11 @@ class Reflector extends FixedRotor {
         return true;
     }
 
+    @Override
+    Rotor copy() {
+        return new Reflector(name(), permutation());
+    }
+
     @Override
     int convertBackward(int e) {
         throw error("Reflector only converts forward");
@@ -85,10 +85,24 @@ class Rotor {
         return false;
     }
 
+    /** Returns true iff I would be at a notch in setting POSN.  By
+     *  default, I have no notches. */
+    boolean notchAt(int posn) {
+        return false;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
 
+    /** Return a new rotor like me, sharing my permutation and starting
+     *  at my current setting, for use in a separate machine. */
+    Rotor copy() {
+        Rotor result = new Rotor(_name, _permutation);
+        result.set(_setting);
+        return result;
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
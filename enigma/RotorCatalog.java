@@ -0,0 +1,241 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Supplier;
+
+/** The rotors available to a machine, indexed once by name (compared
+ *  ignoring case), so that inserting rotors takes time proportional to
+ *  the number inserted rather than the number available.  A rotor may be
+ *  added already built, as a recipe for building it, or as its
+ *  description in a configuration file (a Spec); a recipe or description
+ *  is followed only when the rotor is first looked up, so that a
+ *  configuration offering thousands of rotors costs only the parsing of
+ *  those used.  Descriptions remain available without building their
+ *  rotors, for those, such as ConfigSnapshot, that record a catalog.
+ *  The catalog may be shared by threads, though the rotors it returns
+ *  may not.
+ *  @author Jerome
+ */
+class RotorCatalog {
+
+    /** An empty catalog of rotors over ALPHABET. */
+    RotorCatalog(Alphabet alphabet) {
+        _alphabet = alphabet;
+    }
+
+    /** A catalog of ROTORS over ALPHABET. */
+    RotorCatalog(Alphabet alphabet, Collection<Rotor> rotors) {
+        this(alphabet);
+        for (Rotor rotor : rotors) {
+            add(rotor);
+        }
+    }
+
+    /** Add ROTOR, which must be over my alphabet. */
+    void add(Rotor rotor) {
+        checkAlphabet(rotor);
+        add(rotor.name(), null, rotor, null);
+    }
+
+    /** Add a rotor named NAME, to be built by MAKER when first looked
+     *  up.  MAKER must build a new rotor each time it is called, since a
+     *  copy of this catalog calls it again for its own. */
+    void add(String name, Supplier<Rotor> maker) {
+        add(name, maker, null, null);
+    }
+
+    /** Add the rotor described by SPEC, to be built when first looked
+     *  up. */
+    void add(Spec spec) {
+        add(spec.name(), () -> spec.build(_alphabet), null, spec);
+    }
+
+    /** Return the rotor named NAME, ignoring case, building it if need
+     *  be, or null if there is none. */
+    synchronized Rotor get(String name) {
+        Entry entry = _index.get(key(name));
+        return entry == null ? null : build(entry);
+    }
+
+    /** Return the description of the rotor named NAME, ignoring case, or
+     *  null if there is none or it was not added as a description.  The
+     *  rotor is not built. */
+    synchronized Spec spec(String name) {
+        Entry entry = _index.get(key(name));
+        return entry == null ? null : entry._spec;
+    }
+
+    /** Return true iff I have a rotor named NAME, ignoring case, that has
+     *  been built. */
+    synchronized boolean isBuilt(String name) {
+        Entry entry = _index.get(key(name));
+        return entry != null && entry._rotor != null;
+    }
+
+    /** Return the names of my rotors, in the order added. */
+    synchronized List<String> names() {
+        ArrayList<String> result = new ArrayList<>(_entries.size());
+        for (Entry entry : _entries) {
+            result.add(entry._name);
+        }
+        return result;
+    }
+
+    /** Return true iff I have a rotor named NAME, ignoring case, without
+     *  building it. */
+    synchronized boolean contains(String name) {
+        return _index.containsKey(key(name));
+    }
+
+    /** Return the number of rotors I have. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Return all my rotors, in the order added, building any not yet
+     *  built. */
+    synchronized List<Rotor> rotors() {
+        ArrayList<Rotor> result = new ArrayList<>(_entries.size());
+        for (Entry entry : _entries) {
+            result.add(build(entry));
+        }
+        return result;
+    }
+
+    /** Return a catalog of copies of my rotors, for use independently of
+     *  me.  Rotors not yet built are not built for the copy either. */
+    synchronized RotorCatalog copy() {
+        RotorCatalog result = new RotorCatalog(_alphabet);
+        for (Entry entry : _entries) {
+            result.add(entry._name, entry._maker,
+                       entry._rotor == null ? null : entry._rotor.copy(),
+                       entry._spec);
+        }
+        return result;
+    }
+
+    /** Return NAME in the form by which rotors are indexed. */
+    static String key(String name) {
+        return name.toUpperCase();
+    }
+
+    /** Add an entry for a rotor named NAME, made by MAKER, already built
+     *  as ROTOR (null if not yet built), and described by SPEC (null if
+     *  it was not added as a description). */
+    private synchronized void add(String name, Supplier<Rotor> maker,
+                                  Rotor rotor, Spec spec) {
+        String key = key(name);
+        if (_index.containsKey(key)) {
+            throw new EnigmaException("no rotor repeating.");
+        }
+        Entry entry = new Entry(name, maker, spec);
+        entry._rotor = rotor;
+        _index.put(key, entry);
+        _entries.add(entry);
+    }
+
+    /** Return the rotor of ENTRY, building it if need be. */
+    private Rotor build(Entry entry) {
+        if (entry._rotor == null) {
+            Rotor rotor = entry._maker.get();
+            checkAlphabet(rotor);
+            entry._rotor = rotor;
+        }
+        return entry._rotor;
+    }
+
+    /** Check that ROTOR is over my alphabet. */
+    private void checkAlphabet(Rotor rotor) {
+        if (rotor.alphabet() != _alphabet) {
+            throw new EnigmaException("Rotors and machine must "
+                    + "use the same alphabet.");
+        }
+    }
+
+    /** The description of a rotor in a configuration file: its kind,
+     *  name, permutation in cycle notation, and notches.  Immutable. */
+    static final class Spec {
+
+        /** A rotor named NAME of kind KIND ('R' for a reflector, 'M' for
+         *  a moving rotor with notches NOTCHES, and 'N' for a fixed
+         *  rotor), with permutation CYCLES. */
+        Spec(char kind, String name, String cycles, String notches) {
+            _kind = kind;
+            _name = name;
+            _cycles = cycles;
+            _notches = notches;
+        }
+
+        /** Return my kind. */
+        char kind() {
+            return _kind;
+        }
+
+        /** Return the rotor's name. */
+        String name() {
+            return _name;
+        }
+
+        /** Return the rotor's permutation, in cycle notation. */
+        String cycles() {
+            return _cycles;
+        }
+
+        /** Return the rotor's notches. */
+        String notches() {
+            return _notches;
+        }
+
+        /** Return a new rotor over ALPHABET as I describe, parsing its
+         *  permutation. */
+        Rotor build(Alphabet alphabet) {
+            Permutation perm = new Permutation(_cycles, alphabet);
+            if (_kind == 'M') {
+                return new MovingRotor(_name, perm, _notches);
+            } else if (_kind == 'R') {
+                return new Reflector(_name, perm);
+            }
+            return new FixedRotor(_name, perm);
+        }
+
+        /** Kind of rotor. */
+        private final char _kind;
+        /** Rotor name. */
+        private final String _name;
+        /** Permutation, in cycle notation. */
+        private final String _cycles;
+        /** Notches, if a moving rotor. */
+        private final String _notches;
+    }
+
+    /** One rotor in the catalog. */
+    private static final class Entry {
+
+        /** An entry for the rotor named NAME, built by MAKER, and described
+         *  by SPEC (null if not added as a description). */
+        Entry(String name, Supplier<Rotor> maker, Spec spec) {
+            _name = name;
+            _maker = maker;
+            _spec = spec;
+        }
+
+        /** The rotor's name. */
+        private final String _name;
+        /** Builds the rotor, or null if it was added built. */
+        private final Supplier<Rotor> _maker;
+        /** Describes the rotor, or null. */
+        private final Spec _spec;
+        /** The rotor, or null if not yet built. */
+        private Rotor _rotor;
+    }
+
+    /** The alphabet of all my rotors. */
+    private final Alphabet _alphabet;
+    /** All entries, in the order added. */
+    private final ArrayList<Entry> _entries = new ArrayList<>();
+    /** Entries by key. */
+    private final HashMap<String, Entry> _index = new HashMap<>();
+}
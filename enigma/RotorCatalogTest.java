@@ -0,0 +1,150 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/** The suite of all JUnit tests for the RotorCatalog and ConfigScanner
+ *  classes.
+ *  @author Jerome
+ */
+public class RotorCatalogTest {
+
+    /** Alphabet of the rotors tested. */
+    private static final Alphabet ALPHA = new Alphabet("ABCDEF");
+
+    /** Number of rotors built by recipes so far. */
+    private int _built;
+
+    /** Add to CATALOG a moving rotor named NAME, built only when first
+     *  looked up, counting it in _built when it is. */
+    private void addLazy(RotorCatalog catalog, String name) {
+        catalog.add(name, () -> {
+            _built += 1;
+            return new MovingRotor(name, new Permutation("(ABC)", ALPHA),
+                                   "A");
+        });
+    }
+
+    @Test
+    public void lazyTest() {
+        RotorCatalog catalog = new RotorCatalog(ALPHA);
+        for (int k = 0; k < 1000; k += 1) {
+            addLazy(catalog, "Rotor" + k);
+        }
+        catalog.add(new Reflector("B", new Permutation("(AB) (CD) (EF)",
+                                                       ALPHA)));
+        assertEquals(1001, catalog.size());
+        assertTrue(catalog.contains("ROTOR17"));
+        assertEquals(0, _built);
+        Rotor rotor = catalog.get("rotor17");
+        assertEquals("Rotor17", rotor.name());
+        assertSame(rotor, catalog.get("ROTOR17"));
+        assertEquals(1, _built);
+        assertNull(catalog.get("Rotor1000"));
+        assertTrue(catalog.get("b").reflecting());
+        assertEquals(1, _built);
+    }
+
+    @Test
+    public void copyTest() {
+        RotorCatalog catalog = new RotorCatalog(ALPHA);
+        addLazy(catalog, "I");
+        addLazy(catalog, "II");
+        Rotor first = catalog.get("I");
+        first.set(2);
+        RotorCatalog copy = catalog.copy();
+        assertEquals(1, _built);
+        Rotor copied = copy.get("I");
+        assertTrue(first != copied);
+        assertEquals(2, copied.setting());
+        assertTrue(catalog.get("II") != copy.get("II"));
+        assertEquals(3, _built);
+        ArrayList<String> names = new ArrayList<>();
+        for (Rotor rotor : copy.rotors()) {
+            names.add(rotor.name());
+        }
+        assertEquals(Arrays.asList("I", "II"), names);
+    }
+
+    @Test
+    public void specTest() {
+        RotorCatalog catalog = new RotorCatalog(ALPHA);
+        catalog.add(new RotorCatalog.Spec('M', "I", "(ABC)", "A"));
+        catalog.add(new RotorCatalog.Spec('N', "Bad", "(AZ)", ""));
+        addLazy(catalog, "II");
+        assertEquals(Arrays.asList("I", "Bad", "II"), catalog.names());
+        assertEquals("(AZ)", catalog.spec("bad").cycles());
+        assertNull(catalog.spec("II"));
+        assertFalse(catalog.isBuilt("I"));
+        RotorCatalog copy = catalog.copy();
+        assertEquals('M', copy.spec("I").kind());
+        Rotor rotor = copy.get("I");
+        assertTrue(rotor.rotates() && rotor.notchAt(0));
+        assertTrue(copy.isBuilt("I"));
+        assertFalse(catalog.isBuilt("I"));
+        try {
+            catalog.get("Bad");
+            fail("bad permutation accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(0, _built);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void duplicateTest() {
+        RotorCatalog catalog = new RotorCatalog(ALPHA);
+        addLazy(catalog, "Beta");
+        addLazy(catalog, "BETA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void alphabetTest() {
+        RotorCatalog catalog = new RotorCatalog(ALPHA);
+        Alphabet other = new Alphabet("ABCDEF");
+        catalog.add("I", () -> new FixedRotor("I", new Permutation("",
+                                                                   other)));
+        catalog.get("I");
+    }
+
+    @Test
+    public void machineTest() {
+        RotorCatalog catalog = new RotorCatalog(ALPHA);
+        catalog.add(new Reflector("B", new Permutation("(AB) (CD) (EF)",
+                                                       ALPHA)));
+        for (int k = 0; k < 100; k += 1) {
+            addLazy(catalog, "R" + k);
+        }
+        Machine machine = new Machine(ALPHA, 3, 2, catalog);
+        machine.insertRotors(new String[] {"B", "r5", "R7"});
+        assertEquals(2, _built);
+        assertEquals("R5", machine.getRotorList()[1].name());
+        machine.copy().insertRotors(new String[] {"B", "R8", "R9"});
+        assertEquals(4, _built);
+    }
+
+    @Test
+    public void scannerTest() {
+        ConfigScanner scanner =
+            new ConfigScanner("A B C\r\n 5  3\n I MQ (AB)\t(CD)  \n");
+        assertEquals("A B C", scanner.nextLine());
+        assertTrue(scanner.hasNextInt());
+        assertEquals(5, scanner.nextInt());
+        assertEquals(3, scanner.nextInt());
+        assertFalse(scanner.hasNextInt());
+        assertEquals("I", scanner.next());
+        assertEquals("MQ", scanner.next());
+        assertEquals("(AB)", scanner.next());
+        assertEquals("(CD)", scanner.next());
+        assertFalse(scanner.hasNext());
+        try {
+            scanner.next();
+            fail("read past end");
+        } catch (NoSuchElementException excp) {
+            return;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package enigma;
+
+/** The state of one use of a MachineDefinition: the rotors chosen for
+ *  each slot, their positions, and the plugboard.  A session refers to
+ *  its definition's rotor tables and keeps only its own positions, so
+ *  making one is cheap, and any number of sessions of one definition may
+ *  be used at once, one per thread.  A session itself is not
+ *  thread-safe.
+ *  @author Jerome
+ */
+class Session {
+
+    /** A session of DEFINITION with rotors SLOTS (reflector first) at
+     *  SETTINGS (element 0 ignored), and a plugboard taking K to
+     *  PLUGIN[K], with inverse PLUGOUT. */
+    Session(MachineDefinition definition,
+            MachineDefinition.RotorTables[] slots, int[] settings,
+            int[] plugIn, int[] plugOut) {
+        this(definition, slots, new SteppingPlan(slots), settings,
+             plugIn, plugOut);
+    }
+
+    /** A session as above, whose rotors step according to PLAN. */
+    private Session(MachineDefinition definition,
+                    MachineDefinition.RotorTables[] slots, SteppingPlan plan,
+                    int[] settings, int[] plugIn, int[] plugOut) {
+        _definition = definition;
+        _slots = slots;
+        _plan = plan;
+        _pos = settings.clone();
+        _pos[0] = 0;
+        _plugIn = plugIn;
+        _plugOut = plugOut;
+    }
+
+    /** Return a new session of the same definition, with my rotors,
+     *  positions, and plugboard, to be used independently of me. */
+    Session copy() {
+        return new Session(_definition, _slots, _plan, _pos, _plugIn,
+                           _plugOut);
+    }
+
+    /** Return my definition. */
+    MachineDefinition definition() {
+        return _definition;
+    }
+
+    /** Return my rotors, by slot. */
+    MachineDefinition.RotorTables[] slots() {
+        return _slots;
+    }
+
+    /** Return how my rotors step. */
+    SteppingPlan steppingPlan() {
+        return _plan;
+    }
+
+    /** Return my plugboard as a table: element K is the image of K. */
+    int[] plugIn() {
+        return _plugIn;
+    }
+
+    /** Return the inverse of my plugboard as a table. */
+    int[] plugOut() {
+        return _plugOut;
+    }
+
+    /** Return a snapshot of my rotor positions, as for
+     *  Machine.settingsAfter: element K is the setting of rotor K. */
+    int[] settings() {
+        return _pos.clone();
+    }
+
+    /** Restore my rotor positions to SETTINGS, as returned by
+     *  settings(). */
+    void setSettings(int[] settings) {
+        for (int j = 1; j < _pos.length; j += 1) {
+            _pos[j] = settings[j];
+        }
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  the rotors. */
+    int convert(int c) {
+        advanceRotors();
+        return substitute(c);
+    }
+
+    /** Returns the result of converting C with the rotors in their current
+     *  positions, without advancing them. */
+    int substitute(int c) {
+        int oz = _plugIn[c];
+        for (int j = _slots.length - 1; j >= 0; j -= 1) {
+            oz = _slots[j].forward(oz, _pos[j]);
+        }
+        for (int k = 1; k < _slots.length; k += 1) {
+            oz = _slots[k].backward(oz, _pos[k]);
+        }
+        return _plugOut[oz];
+    }
+
+    /** Returns the encoding/decoding of MSG, updating my rotor positions
+     *  accordingly. */
+    String convert(String msg) {
+        char[] chars = msg.toCharArray();
+        convert(chars, 0, chars.length, chars, 0);
+        return new String(chars);
+    }
+
+    /** Convert the LEN characters IN[OFF .. OFF+LEN-1], storing the
+     *  results in OUT[OUTOFF .. OUTOFF+LEN-1] and updating my rotor
+     *  positions accordingly.  IN and OUT may be the same array. */
+    void convert(char[] in, int off, int len, char[] out, int outOff) {
+        if (off < 0 || len < 0 || outOff < 0 || off + len > in.length
+            || outOff + len > out.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        Alphabet alpha = _definition.alphabet();
+        for (int s = 0; s < len; s += 1) {
+            out[outOff + s] = alpha.toChar(convert(alpha.toInt(in[off + s])));
+        }
+    }
+
+    /** Advance the rotors as for one keypress, as Machine does. */
+    private void advanceRotors() {
+        _plan.advance(_pos);
+    }
+
+    /** The definition I use. */
+    private final MachineDefinition _definition;
+    /** My rotors, by slot. */
+    private final MachineDefinition.RotorTables[] _slots;
+    /** How my rotors step. */
+    private final SteppingPlan _plan;
+    /** Rotor positions, by slot. */
+    private final int[] _pos;
+    /** The plugboard and its inverse, as tables. */
+    private final int[] _plugIn, _plugOut;
+}
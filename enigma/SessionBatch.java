@@ -0,0 +1,158 @@
+package enigma;
+
+/** Converts messages for several sessions of one definition in lockstep.
+ *  The state of the streams is held as arrays indexed by stream (lane):
+ *  for each slot, the rotor positions of all lanes, and the offsets of
+ *  each lane's rotor into the definition's combined tables (see
+ *  MachineDefinition.forwardTable).  Each character position is then
+ *  converted by passing every lane through slot after slot, so that the
+ *  innermost loops run across lanes, with no dependence between
+ *  iterations: one indexed load per lane per slot, the shape of a SIMD
+ *  gather.  This keeps a lane's work from waiting on the result of its
+ *  previous table lookup, as a single stream must, and lets the JIT
+ *  unroll and vectorize what it can.  Once the shortest message of a
+ *  batch is done, the rest are finished one lane at a time.
+ *  @author Jerome
+ */
+class SessionBatch {
+
+    /** A batch converting for SESSIONS, which must share a definition and
+     *  have the same number of slots. */
+    SessionBatch(Session... sessions) {
+        _sessions = sessions;
+        _lanes = sessions.length;
+        MachineDefinition definition = sessions[0].definition();
+        _size = definition.alphabet().size();
+        _alphabet = definition.alphabet();
+        _forward = definition.forwardTable();
+        _backward = definition.backwardTable();
+        _slots = sessions[0].slots().length;
+        _base = new int[_slots][_lanes];
+        _plans = new SteppingPlan[_lanes];
+        _pos = new int[_slots][_lanes];
+        _lanePos = new int[_slots];
+        _plugIn = new int[_lanes * _size];
+        _plugOut = new int[_lanes * _size];
+        _x = new int[_lanes];
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            Session session = sessions[lane];
+            if (session.definition() != definition
+                || session.slots().length != _slots) {
+                throw new IllegalArgumentException("mismatched sessions");
+            }
+            for (int j = 0; j < _slots; j += 1) {
+                MachineDefinition.RotorTables rotor = session.slots()[j];
+                _base[j][lane] = rotor.index() * 2 * _size;
+            }
+            _plans[lane] = session.steppingPlan();
+            System.arraycopy(session.plugIn(), 0, _plugIn, lane * _size,
+                             _size);
+            System.arraycopy(session.plugOut(), 0, _plugOut, lane * _size,
+                             _size);
+        }
+    }
+
+    /** Convert MESSAGES[K] in place with session K, for each K, leaving
+     *  each session's rotors where converting its message alone would
+     *  have. */
+    void convert(char[][] messages) {
+        if (messages.length != _lanes) {
+            throw new IllegalArgumentException("wrong number of messages");
+        }
+        int common = Integer.MAX_VALUE;
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            int[] settings = _sessions[lane].settings();
+            for (int j = 1; j < _slots; j += 1) {
+                _pos[j][lane] = settings[j];
+            }
+            common = Math.min(common, messages[lane].length);
+        }
+        for (int k = 0; k < common; k += 1) {
+            advanceRotors();
+            for (int lane = 0; lane < _lanes; lane += 1) {
+                _x[lane] = _plugIn[lane * _size
+                                   + _alphabet.toInt(messages[lane][k])];
+            }
+            substitute();
+            for (int lane = 0; lane < _lanes; lane += 1) {
+                messages[lane][k] =
+                    _alphabet.toChar(_plugOut[lane * _size + _x[lane]]);
+            }
+        }
+        int[] settings = new int[_slots];
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            for (int j = 1; j < _slots; j += 1) {
+                settings[j] = _pos[j][lane];
+            }
+            Session session = _sessions[lane];
+            session.setSettings(settings);
+            char[] msg = messages[lane];
+            session.convert(msg, common, msg.length - common, msg, common);
+        }
+    }
+
+    /** Pass _x[L] through the rotors of each lane L, at their positions,
+     *  out to the reflector and back. */
+    private void substitute() {
+        for (int j = _slots - 1; j >= 0; j -= 1) {
+            lookup(_forward, _base[j], _pos[j]);
+        }
+        for (int j = 1; j < _slots; j += 1) {
+            lookup(_backward, _base[j], _pos[j]);
+        }
+    }
+
+    /** Replace _x[L], for each lane L, by the entry for it in the rotor
+     *  tables TABLE starting at BASE[L], for a rotor at position POS[L]. */
+    private void lookup(int[] table, int[] base, int[] pos) {
+        int[] x = _x;
+        int size = _size;
+        for (int lane = 0; lane < x.length; lane += 1) {
+            int s = pos[lane];
+            int r = table[base[lane] + x[lane] + s] - s;
+            x[lane] = r + (size & (r >> (Integer.SIZE - 1)));
+        }
+    }
+
+    /** Advance the rotors of every lane as for one keypress, with the
+     *  stepping plan of its session.  Only the rightmost rotor moves on
+     *  most keypresses, so the lanes are stepped one at a time. */
+    private void advanceRotors() {
+        int[] pos = _lanePos;
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            for (int j = 1; j < _slots; j += 1) {
+                pos[j] = _pos[j][lane];
+            }
+            int moved = _plans[lane].advance(pos);
+            for (int j = moved; j < _slots; j += 1) {
+                _pos[j][lane] = pos[j];
+            }
+        }
+    }
+
+    /** The sessions converted, one per lane. */
+    private final Session[] _sessions;
+    /** Number of lanes. */
+    private final int _lanes;
+    /** Number of rotor slots. */
+    private final int _slots;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+    /** The definition's combined rotor tables. */
+    private final int[] _forward, _backward;
+    /** _base[J][L] is the offset of the tables of lane L's rotor J. */
+    private final int[][] _base;
+    /** _plans[L] is how lane L's rotors step. */
+    private final SteppingPlan[] _plans;
+    /** _pos[J][L] is the position of lane L's rotor J. */
+    private final int[][] _pos;
+    /** Scratch space for advanceRotors: one lane's rotor positions. */
+    private final int[] _lanePos;
+    /** The plugboards of the lanes, and their inverses, one after
+     *  another. */
+    private final int[] _plugIn, _plugOut;
+    /** The character of each lane being converted. */
+    private final int[] _x;
+}
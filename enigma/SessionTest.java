@@ -0,0 +1,158 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MachineDefinition, Session, and
+ *  SessionBatch classes.
+ *  @author Jerome
+ */
+public class SessionTest {
+
+    /** Settings lines for navalMachine(4). */
+    private static final String[] SETTINGS = {
+        "* B Beta III II AAA",
+        "* C Gamma I III KDV (AQ) (BZ) (MX)",
+        "* B Gamma II I QEQ (HQ) (EX) (IP) (TR) (BY)",
+        "* c beta i ii ZZZ",
+    };
+
+    /** Return a random message of LEN upper-case letters from RANDOM. */
+    private static String message(Random random, int len) {
+        char[] msg = new char[len];
+        for (int k = 0; k < len; k += 1) {
+            msg[k] = (char) ('A' + random.nextInt(26));
+        }
+        return new String(msg);
+    }
+
+    @Test
+    public void matchesMachineTest() {
+        MachineDefinition definition =
+            new MachineDefinition(navalMachine(4));
+        Random random = new Random(15);
+        for (String settings : SETTINGS) {
+            Machine machine = navalMachine(4);
+            Main.setUp(machine, settings);
+            Session session = definition.session(settings);
+            String msg = message(random, 2000);
+            assertEquals(settings, machine.convert(msg),
+                         session.convert(msg));
+        }
+    }
+
+    @Test
+    public void snapshotTest() {
+        MachineDefinition definition =
+            new MachineDefinition(navalMachine(4));
+        Session session = definition.session(SETTINGS[1]);
+        session.convert("HELLOWORLD");
+        int[] saved = session.settings();
+        Session copy = session.copy();
+        String first = session.convert("ATTACKATDAWN");
+        assertEquals(first, copy.convert("ATTACKATDAWN"));
+        session.setSettings(saved);
+        assertEquals(first, session.convert("ATTACKATDAWN"));
+        assertArrayEquals(session.settings(), copy.settings());
+    }
+
+    @Test
+    public void concurrentSessionsTest() throws InterruptedException {
+        MachineDefinition definition =
+            new MachineDefinition(navalMachine(4));
+        String msg = message(new Random(16), 5000);
+        String[] expected = new String[SETTINGS.length];
+        for (int k = 0; k < SETTINGS.length; k += 1) {
+            expected[k] = definition.session(SETTINGS[k]).convert(msg);
+        }
+        String[] results = new String[4 * SETTINGS.length];
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < results.length; t += 1) {
+            int index = t;
+            threads.add(new Thread(() -> {
+                Session session =
+                    definition.session(SETTINGS[index % SETTINGS.length]);
+                results[index] = session.convert(msg);
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int t = 0; t < results.length; t += 1) {
+            assertEquals(expected[t % SETTINGS.length], results[t]);
+        }
+    }
+
+    @Test
+    public void batchTest() {
+        MachineDefinition definition =
+            new MachineDefinition(navalMachine(4));
+        Random random = new Random(17);
+        Session[] sessions = new Session[2 * SETTINGS.length];
+        Session[] expected = new Session[sessions.length];
+        char[][] messages = new char[sessions.length][];
+        String[] converted = new String[sessions.length];
+        for (int k = 0; k < sessions.length; k += 1) {
+            sessions[k] = definition.session(SETTINGS[k % SETTINGS.length]);
+            expected[k] = sessions[k].copy();
+            String msg = message(random, 700 + random.nextInt(100));
+            messages[k] = msg.toCharArray();
+            converted[k] = expected[k].convert(msg);
+        }
+        new SessionBatch(sessions).convert(messages);
+        for (int k = 0; k < sessions.length; k += 1) {
+            assertEquals(converted[k], new String(messages[k]));
+            assertArrayEquals(expected[k].settings(), sessions[k].settings());
+            assertEquals(expected[k].convert("MORE"),
+                         sessions[k].convert("MORE"));
+        }
+    }
+
+    @Test
+    public void lazyDefinitionTest() {
+        MachineDefinition definition =
+            new MachineDefinition(lazyNavalMachine(4));
+        Machine machine = navalMachine(4);
+        Main.setUp(machine, SETTINGS[1]);
+        String msg = message(new Random(18), 500);
+        Session session = definition.session(SETTINGS[1]);
+        int[] forward = definition.forwardTable();
+        assertEquals(machine.convert(msg), session.convert(msg));
+        Session other = definition.session(SETTINGS[2]);
+        assertEquals(3, session.slots()[3].index());
+        assertEquals(5, other.slots()[2].index());
+        assertTrue(definition.forwardTable().length >= forward.length);
+        try {
+            definition.session("* B Broken III II AAA");
+            fail("bad permutation accepted");
+        } catch (EnigmaException excp) {
+            return;
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void unknownRotorTest() {
+        new MachineDefinition(navalMachine(4))
+            .session("* B Beta III IX AAA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void noReflectorTest() {
+        new MachineDefinition(navalMachine(4))
+            .session("* Beta B III II AAA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void badPositionsTest() {
+        new MachineDefinition(navalMachine(4))
+            .session("* B Beta III II AA");
+    }
+}
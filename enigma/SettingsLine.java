@@ -0,0 +1,81 @@
+package enigma;
+
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** A parsed settings line: "* ROTOR ... POSITIONS PLUGBOARD", naming the
+ *  rotors for each slot (reflector first), giving the initial positions
+ *  of all but the reflector, and optionally the plugboard cycles.
+ *  @author Jerome
+ */
+class SettingsLine {
+
+    /** The settings in LINE, for a machine with NUMROTORS slots. */
+    SettingsLine(String line, int numRotors) {
+        Scanner reader = new Scanner(line);
+        if (!reader.hasNext("[*]")) {
+            throw new EnigmaException("bad input format");
+        }
+        reader.next();
+        try {
+            _rotors = new String[numRotors];
+            for (int i = 0; i < numRotors; i++) {
+                _rotors[i] = reader.next();
+            }
+            for (int i = 0; i < _rotors.length - 1; i++) {
+                for (int j = i + 1; j < _rotors.length; j++) {
+                    if (_rotors[i].equals(_rotors[j])) {
+                        throw new EnigmaException("Repeated Rotor");
+                    }
+                }
+            }
+            _positions = reader.next();
+        } catch (NoSuchElementException excp) {
+            throw error("settings line too short");
+        }
+        StringBuilder plugboard = new StringBuilder();
+        while (reader.hasNext()) {
+            plugboard.append(reader.next()).append(' ');
+        }
+        _plugboard = plugboard.toString();
+    }
+
+    /** Return true iff LINE is a settings line: one whose first
+     *  non-whitespace character is MARK. */
+    static boolean isSettings(CharSequence line) {
+        for (int i = 0; i < line.length(); i += 1) {
+            char ch = line.charAt(i);
+            if (!Character.isWhitespace(ch)) {
+                return ch == MARK;
+            }
+        }
+        return false;
+    }
+
+    /** Return the names of the rotors, by slot. */
+    String[] rotors() {
+        return _rotors;
+    }
+
+    /** Return the initial positions of the rotors in slots 1 and up. */
+    String positions() {
+        return _positions;
+    }
+
+    /** Return the plugboard, in cycle notation. */
+    String plugboard() {
+        return _plugboard;
+    }
+
+    /** First non-whitespace character of a settings line. */
+    static final char MARK = '*';
+
+    /** Rotor names, by slot. */
+    private final String[] _rotors;
+    /** Initial positions. */
+    private final String _positions;
+    /** Plugboard cycles. */
+    private final String _plugboard;
+}
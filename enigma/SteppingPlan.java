@@ -0,0 +1,329 @@
+package enigma;
+
+import java.util.function.IntPredicate;
+
+import static enigma.EnigmaException.*;
+
+/** How the rotors in a machine's slots step, compiled from the rotors
+ *  when they are inserted (or from a session's rotor tables): which
+ *  slots move, and a bitmap of each
+ *  rotor's notches.  It works on arrays of rotor positions indexed by
+ *  slot (element 0, the reflector's, is ignored), advancing them as for
+ *  one keypress in a single pass, or as for any number of keypresses
+ *  at once (see settingsAfter), and answers questions about the stepping
+ *  that let callers skip ahead: how long until some rotor other than the
+ *  rightmost next moves (nextCarry), and after how many keypresses the
+ *  rotor positions repeat (period).
+ *  @author Jerome
+ */
+class SteppingPlan {
+
+    /** The plan for rotors SLOTS (reflector first). */
+    SteppingPlan(Rotor[] slots) {
+        this(slots.length, slots[0].size(), j -> slots[j].rotates(),
+             (j, q) -> slots[j].notchAt(q));
+    }
+
+    /** The plan for the rotors with tables SLOTS (reflector first). */
+    SteppingPlan(MachineDefinition.RotorTables[] slots) {
+        this(slots.length, slots[0].size(), j -> slots[j].rotates(),
+             (j, q) -> slots[j].notchAt(q));
+    }
+
+    /** The plan for N slots of rotors in an alphabet of SIZE characters,
+     *  where the rotor in slot J moves iff ROTATES.test(J), and has a
+     *  notch at Q iff NOTCHES.notchAt(J, Q). */
+    private SteppingPlan(int n, int size, IntPredicate rotates,
+                         Notches notches) {
+        _n = n;
+        _size = size;
+        _words = (_size + Long.SIZE - 1) / Long.SIZE;
+        _rotates = new boolean[_n];
+        _notches = new long[_n * _words];
+        _next = new int[_n][];
+        _notchCount = new int[_n];
+        for (int j = 1; j < _n; j += 1) {
+            _rotates[j] = rotates.test(j);
+            if (!_rotates[j]) {
+                continue;
+            }
+            for (int q = 0; q < _size; q += 1) {
+                if (notches.notchAt(j, q)) {
+                    _notches[j * _words + (q >>> 6)] |= 1L << q;
+                    _notchCount[j] += 1;
+                }
+            }
+            _next[j] = new int[_size];
+            int dist = -1;
+            for (int k = 2 * _size - 1; k >= 0; k -= 1) {
+                int q = k % _size;
+                if (notchAt(j, q)) {
+                    dist = 0;
+                } else if (dist >= 0) {
+                    dist += 1;
+                }
+                if (k < _size) {
+                    _next[j][q] = dist;
+                }
+            }
+        }
+    }
+
+    /** Return the number of slots. */
+    int numRotors() {
+        return _n;
+    }
+
+    /** Return true iff the rotor in slot J has a notch at POSN. */
+    boolean notchAt(int j, int posn) {
+        return (_notches[j * _words + (posn >>> 6)] & (1L << posn)) != 0;
+    }
+
+    /** Advance POS as for one keypress: the rightmost rotor always moves,
+     *  and a rotor at its notch moves both itself and the rotor to its
+     *  left (double stepping).  Whether each rotor moves depends only on
+     *  the notches of it and its right neighbor before the keypress, so
+     *  one pass from the left suffices.  Return the leftmost slot that
+     *  moved. */
+    int advance(int[] pos) {
+        int last = _n - 1;
+        int leftmost = last;
+        boolean carryIn = false;
+        for (int j = 1; j <= last; j += 1) {
+            boolean carryOut = j < last && _rotates[j]
+                && notchAt(j + 1, pos[j + 1]);
+            if (_rotates[j] && (carryOut || carryIn || j == last)) {
+                pos[j] = pos[j] + 1 == _size ? 0 : pos[j] + 1;
+                leftmost = Math.min(leftmost, j);
+            }
+            carryIn = carryOut;
+        }
+        return leftmost;
+    }
+
+    /** Return the number of keypresses, starting with the next, up to
+     *  and including the first at which a rotor other than the rightmost
+     *  moves, from positions POS, or NEVER if that never happens.  Until
+     *  then, only the rightmost rotor moves. */
+    int nextCarry(int[] pos) {
+        int last = _n - 1;
+        for (int a = 1; a < last; a += 1) {
+            if (_rotates[a] && notchAt(a + 1, pos[a + 1])) {
+                return 1;
+            }
+        }
+        if (last < 2 || !_rotates[last] || !_rotates[last - 1]
+            || _next[last][pos[last]] < 0) {
+            return NEVER;
+        }
+        return _next[last][pos[last]] + 1;
+    }
+
+    /** Return the number of keypresses after which the rotor positions
+     *  repeat, once any initial double step has been taken: the product,
+     *  over the moving rotors from the right, of the number of turns of
+     *  the rotors to its right needed to bring it round again.  Assumes,
+     *  as settingsAfter does, that no rotor has notches at two adjacent
+     *  positions, and returns -1 otherwise.  Throws ArithmeticException
+     *  if the result does not fit in a long. */
+    long period() {
+        int last = _n - 1;
+        if (adjacentNotches()) {
+            return -1;
+        }
+        if (last < 1 || !_rotates[last]) {
+            return 1;
+        }
+        long period = _size;
+        long turns = 1;
+        for (int j = last - 1; j > 0; j -= 1) {
+            long kicks = _rotates[j + 1] ? turns * _notchCount[j + 1] : 0;
+            if (!_rotates[j] || kicks == 0) {
+                turns = 0;
+                continue;
+            }
+            long needed = _rotates[j - 1] ? _size - _notchCount[j] : _size;
+            long cycles = needed / gcd(needed, kicks);
+            period = Math.multiplyExact(period, cycles);
+            turns = cycles * kicks / needed;
+        }
+        return period;
+    }
+
+    /** Return the settings the rotors would have after N >= 0 keypresses
+     *  from SETTINGS, as for Machine.settingsAfter.
+     *
+     *  Rather than stepping N times, this counts moves rotor by rotor,
+     *  from the right.  The rightmost rotor moves N times.  Every other
+     *  moving rotor moves once each time the rotor to its right leaves a
+     *  notch, and, if the rotor to its left also moves, once more on the
+     *  keypress after it lands on one of its own notches (double
+     *  stepping).  So its moves are a walk around its non-notch positions,
+     *  one per "kick", except that a kick on the last keypress may leave it
+     *  waiting on a notch.  Deciding that needs the kick counts at the
+     *  last few keypresses too, hence the window of DEPTH time offsets.
+     *  The time taken is O(numRotors() * (numRotors() + alphabet size)),
+     *  independent of N.  Should some moving rotor have notches at two
+     *  adjacent positions, so that a rotor can be kicked while waiting on
+     *  a notch, the rotors are simply stepped N times instead. */
+    int[] settingsAfter(int[] settings, long n) {
+        if (n < 0) {
+            throw error("cannot step backwards");
+        }
+        int[] result = new int[_n];
+        for (int j = 1; j < _n; j += 1) {
+            result[j] = settings[j];
+        }
+        if (n == 0) {
+            return result;
+        }
+        if (adjacentNotches()) {
+            for (long k = 0; k < n; k += 1) {
+                advance(result);
+            }
+            return result;
+        }
+        boolean[][] notches = new boolean[_n][_size];
+        for (int j = 1; j < _n; j += 1) {
+            for (int q = 0; q < _size; q += 1) {
+                notches[j][q] = _rotates[j] && notchAt(j, q);
+            }
+        }
+
+        int depth = _n + 1;
+        long[] kicks = new long[depth + 1];
+        long[] moves = new long[depth + 1];
+        boolean kickAtOne = false;
+        for (int j = _n - 1; j > 0; j -= 1, depth -= 1) {
+            int p = settings[j];
+            boolean doubleSteps = j > 1 && _rotates[j - 1];
+            for (int d = 0; d < depth; d += 1) {
+                long t = Math.max(0, n - d);
+                if (!_rotates[j]) {
+                    moves[d] = 0;
+                } else if (j == _n - 1) {
+                    moves[d] = t;
+                } else if (doubleSteps) {
+                    moves[d] = doubleSteppedMoves(notches[j], p, t, kicks[d],
+                                                  kicks[d] > kicks[d + 1],
+                                                  kickAtOne);
+                } else {
+                    moves[d] = kicks[d];
+                }
+            }
+            result[j] = (int) ((p + moves[0] % _size) % _size);
+            for (int d = 0; d < depth; d += 1) {
+                kicks[d] = countNotches(notches[j], p, moves[d]);
+            }
+            kickAtOne = notches[j][p];
+        }
+        return result;
+    }
+
+    /** Return true iff some moving rotor has notches at two adjacent
+     *  positions. */
+    private boolean adjacentNotches() {
+        for (int j = 1; j < _n; j += 1) {
+            for (int q = 0; _rotates[j] && q < _size; q += 1) {
+                if (notchAt(j, q) && notchAt(j, (q + 1) % _size)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Return the number of times a double-stepping rotor with notches
+     *  NOTCHES, starting at setting P, moves in T keypresses, given that it
+     *  is kicked by the rotor to its right KICKS times in those keypresses.
+     *  KICKATEND is true iff one of the kicks is on keypress T, and
+     *  KICKATONE iff one is on the first keypress. */
+    private static long doubleSteppedMoves(boolean[] notches, int p, long t,
+                                           long kicks, boolean kickAtEnd,
+                                           boolean kickAtOne) {
+        int size = notches.length;
+        if (t == 0) {
+            return 0;
+        }
+        long moves = 0;
+        int posn = p;
+        if (notches[p]) {
+            moves = 1;
+            posn = (p + 1) % size;
+            if (kickAtOne) {
+                kicks -= 1;
+            }
+        }
+        if (kicks == 0) {
+            return moves;
+        }
+        int[] open = new int[size];
+        int numOpen = 0, start = 0;
+        for (int q = 0; q < size; q += 1) {
+            if (q == posn) {
+                start = numOpen;
+            }
+            if (!notches[q]) {
+                open[numOpen] = q;
+                numOpen += 1;
+            }
+        }
+        int target = open[(int) ((start + kicks % numOpen) % numOpen)];
+        long dist = (kicks / numOpen) * size + Math.floorMod(target - posn,
+                                                             size);
+        if (kickAtEnd && notches[Math.floorMod(target - 1, size)]) {
+            dist -= 1;
+        }
+        return moves + dist;
+    }
+
+    /** Return how many of the M settings starting at P (cyclically) are
+     *  marked in NOTCHES. */
+    private static long countNotches(boolean[] notches, int p, long m) {
+        int size = notches.length;
+        long total = 0;
+        for (boolean notch : notches) {
+            total += notch ? 1 : 0;
+        }
+        long result = (m / size) * total;
+        for (int k = 0; k < m % size; k += 1) {
+            result += notches[(p + k) % size] ? 1 : 0;
+        }
+        return result;
+    }
+
+    /** Return the greatest common divisor of A and B, both positive. */
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /** The notches of the rotors in a machine's slots. */
+    private interface Notches {
+        /** Return true iff the rotor in slot J has a notch at POSN. */
+        boolean notchAt(int j, int posn);
+    }
+
+    /** Value of nextCarry when no carry will happen. */
+    static final int NEVER = Integer.MAX_VALUE;
+
+    /** Number of slots. */
+    private final int _n;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Number of words in one notch bitmap. */
+    private final int _words;
+    /** True for the slots whose rotors move. */
+    private final boolean[] _rotates;
+    /** Notch bitmaps, _words words per slot. */
+    private final long[] _notches;
+    /** Number of notches of each moving rotor. */
+    private final int[] _notchCount;
+    /** _next[J][P] is the distance from position P forward to the nearest
+     *  notch of the moving rotor in slot J, or -1 if it has none. */
+    private final int[][] _next;
+}
@@ -0,0 +1,174 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the SteppingPlan class.
+ *  @author Jerome
+ */
+public class SteppingPlanTest {
+
+    /** A six-letter alphabet, small enough to simulate whole periods. */
+    private static final Alphabet SMALL = new Alphabet("ABCDEF");
+
+    /** Return a machine on the SMALL alphabet whose slots hold, after a
+     *  reflector, rotors with notches NOTCHES, where null stands for a
+     *  rotor that does not move. */
+    private static Machine machine(String... notches) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation("(AB) (CD) (EF)",
+                                                      SMALL)));
+        String[] names = new String[notches.length + 1];
+        names[0] = "R";
+        for (int j = 0; j < notches.length; j += 1) {
+            names[j + 1] = "W" + j;
+            Permutation perm = new Permutation("(ACE) (BDF)", SMALL);
+            rotors.add(notches[j] == null
+                       ? new FixedRotor(names[j + 1], perm)
+                       : new MovingRotor(names[j + 1], perm, notches[j]));
+        }
+        Machine result =
+            new Machine(SMALL, names.length, names.length - 1, rotors);
+        result.insertRotors(names);
+        return result;
+    }
+
+    /** Advance POS as for one keypress of the rotors SLOTS, the way
+     *  Machine used to: notches first, then moves from the right. */
+    private static void reference(Rotor[] slots, int[] pos) {
+        int n = slots.length, size = slots[0].size();
+        boolean[] atNotch = new boolean[n], rotated = new boolean[n];
+        for (int a = 1; a < n; a += 1) {
+            atNotch[a] = slots[a].rotates() && slots[a].notchAt(pos[a]);
+        }
+        if (slots[n - 1].rotates()) {
+            pos[n - 1] = (pos[n - 1] + 1) % size;
+        }
+        rotated[n - 1] = true;
+        for (int a = n - 2; a > 0; a -= 1) {
+            if (slots[a].rotates() && atNotch[a + 1]) {
+                pos[a] = (pos[a] + 1) % size;
+                rotated[a] = true;
+                if (!rotated[a + 1]) {
+                    pos[a + 1] = (pos[a + 1] + 1) % size;
+                    rotated[a + 1] = true;
+                }
+            }
+        }
+    }
+
+    /** Machines to try. */
+    private static final String[][] CONFIGS = {
+        {"A", "C", "E"},
+        {"AD", "B", "F"},
+        {null, "A", "C", "E"},
+        {"B", null, "C", "D"},
+        {"A", "CF", "AD"},
+        {"A", "C", null},
+        {"AB", "C", "E"},
+    };
+
+    @Test
+    public void advanceTest() {
+        Random random = new Random(22);
+        for (String[] config : CONFIGS) {
+            Machine machine = machine(config);
+            SteppingPlan plan = machine.steppingPlan();
+            Rotor[] slots = machine.getRotorList();
+            for (int trial = 0; trial < 200; trial += 1) {
+                int[] pos = new int[slots.length];
+                for (int j = 1; j < pos.length; j += 1) {
+                    pos[j] = slots[j].rotates() ? random.nextInt(6) : 0;
+                }
+                int[] expected = pos.clone();
+                reference(slots, expected);
+                int moved = plan.advance(pos);
+                assertArrayEquals(Arrays.toString(config), expected, pos);
+                for (int j = 1; j < moved; j += 1) {
+                    assertTrue(slots[j].rotates() || pos[j] == 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void settingsAfterTest() {
+        for (String[] config : CONFIGS) {
+            Machine machine = machine(config);
+            SteppingPlan plan = machine.steppingPlan();
+            int[] start = machine.settingsAfter(0);
+            start[1] = machine.getRotorList()[1].rotates() ? 4 : 0;
+            int[] pos = start.clone();
+            for (int n = 0; n < 500; n += 1) {
+                assertArrayEquals(Arrays.toString(config) + " " + n,
+                                  pos, plan.settingsAfter(start, n));
+                plan.advance(pos);
+            }
+        }
+    }
+
+    @Test
+    public void nextCarryTest() {
+        for (String[] config : CONFIGS) {
+            Machine machine = machine(config);
+            SteppingPlan plan = machine.steppingPlan();
+            int last = plan.numRotors() - 1;
+            int[] pos = machine.settingsAfter(0);
+            for (int k = 0; k < 300; k += 1) {
+                int carry = plan.nextCarry(pos);
+                int[] probe = pos.clone();
+                int steps = 0;
+                boolean carried = false;
+                while (steps < 40 && !carried) {
+                    steps += 1;
+                    carried = plan.advance(probe) < last;
+                }
+                if (carried) {
+                    assertEquals(Arrays.toString(config), steps, carry);
+                } else {
+                    assertEquals(SteppingPlan.NEVER, carry);
+                }
+                plan.advance(pos);
+            }
+        }
+    }
+
+    @Test
+    public void periodTest() {
+        for (String[] config : CONFIGS) {
+            Machine machine = machine(config);
+            SteppingPlan plan = machine.steppingPlan();
+            long period = plan.period();
+            if (Arrays.asList(config).contains("AB")) {
+                assertEquals(-1, period);
+                continue;
+            }
+            int[] pos = machine.settingsAfter(0);
+            for (int k = 0; k < 10; k += 1) {
+                plan.advance(pos);
+            }
+            int[] start = pos.clone();
+            long found = 0;
+            do {
+                plan.advance(pos);
+                found += 1;
+            } while (!Arrays.equals(start, pos));
+            assertEquals(Arrays.toString(config), found, period);
+        }
+    }
+
+    @Test
+    public void notchBitsTest() {
+        MovingRotor rotor = new MovingRotor(
+            "I", new Permutation("(ACE) (BDF)", SMALL), "BE");
+        assertArrayEquals(new long[] {0b10010}, rotor.notchBits());
+        rotor.set(4);
+        assertTrue(rotor.atNotch());
+        rotor.set(3);
+        assertFalse(rotor.atNotch());
+    }
+}
@@ -0,0 +1,109 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The conversion shared by EnigmaReader and EnigmaWriter: converts runs
+ *  of characters in a machine's alphabet in bulk, deals with other
+ *  characters according to a Policy, and optionally splits the converted
+ *  text into groups.  Line terminators ('\n' and '\r') are always passed
+ *  through unchanged, whatever the policy, and, like any other character
+ *  passed through, start a new group.  With grouping, Policy.DROP therefore
+ *  gives the layout Main writes for message lines.
+ *  @author Jerome
+ */
+class StreamConverter {
+
+    /** What to do with characters not in the alphabet. */
+    enum Policy {
+        /** Pass them through unchanged. */
+        KEEP,
+        /** Leave them out. */
+        DROP,
+        /** Throw an EnigmaException. */
+        REJECT
+    }
+
+    /** A converter using MACHINE, which must have its rotors set up,
+     *  treating characters outside its alphabet according to POLICY, and
+     *  putting a space between groups of GROUP converted characters, or
+     *  not grouping if GROUP is 0. */
+    StreamConverter(Machine machine, Policy policy, int group) {
+        if (group < 0) {
+            throw new IllegalArgumentException("negative group size");
+        }
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _policy = policy;
+        _group = group;
+    }
+
+    /** Return the most characters that converting LEN characters can
+     *  produce. */
+    int maxOutput(int len) {
+        return _group == 0 ? len : 2 * len;
+    }
+
+    /** Convert the LEN characters IN[OFF .. OFF+LEN-1] into OUT, starting
+     *  at OUTOFF, returning the number of characters stored there, which
+     *  is at most maxOutput(LEN).  IN and OUT must not overlap. */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        int end = off + len, o = outOff;
+        int i = off;
+        while (i < end) {
+            int run = i;
+            while (run < end && _alphabet.contains(in[run])) {
+                run += 1;
+            }
+            if (run > i) {
+                o = emit(in, i, run - i, out, o);
+                i = run;
+                continue;
+            }
+            char ch = in[i];
+            i += 1;
+            if (ch == '\n' || ch == '\r' || _policy == Policy.KEEP) {
+                out[o] = ch;
+                o += 1;
+                _column = 0;
+            } else if (_policy == Policy.REJECT) {
+                throw error("character %c not in alphabet", ch);
+            }
+        }
+        return o - outOff;
+    }
+
+    /** Convert the LEN alphabet characters IN[OFF .. OFF+LEN-1] into OUT
+     *  at OUTOFF, grouping them, and return the new end of OUT. */
+    private int emit(char[] in, int off, int len, char[] out, int outOff) {
+        if (_group == 0) {
+            _machine.convert(in, off, len, out, outOff);
+            return outOff + len;
+        }
+        int o = outOff;
+        int i = off, end = off + len;
+        while (i < end) {
+            if (_column == _group) {
+                out[o] = ' ';
+                o += 1;
+                _column = 0;
+            }
+            int chunk = Math.min(_group - _column, end - i);
+            _machine.convert(in, i, chunk, out, o);
+            o += chunk;
+            i += chunk;
+            _column += chunk;
+        }
+        return o;
+    }
+
+    /** The machine converting. */
+    private final Machine _machine;
+    /** Its alphabet. */
+    private final Alphabet _alphabet;
+    /** Treatment of characters not in _alphabet. */
+    private final Policy _policy;
+    /** Characters per group, or 0 if not grouping. */
+    private final int _group;
+    /** Number of characters in the current group. */
+    private int _column;
+}
@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -39,6 +40,61 @@ class TestUtils {
                   + "(PW) (QZ) (SX) (UY)");
     }
 
+    /** The notches of the naval moving rotors. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return a machine over UPPER with NUMROTORS slots and NUMROTORS-2
+     *  pawls, whose available rotors are the naval rotors NAMES (all of
+     *  them if none are named) in the A setting, as given by NAVALA and
+     *  NAVAL_NOTCHES.  No rotors are inserted. */
+    static Machine navalMachine(int numRotors, String... names) {
+        if (names.length == 0) {
+            names = new String[] {"B", "C", "Beta", "Gamma", "I", "II",
+                                  "III", "IV", "V", "VI", "VII", "VIII"};
+        }
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : names) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            if (name.equals("B") || name.equals("C")) {
+                rotors.add(new Reflector(name, perm));
+            } else if (NAVAL_NOTCHES.containsKey(name)) {
+                rotors.add(new MovingRotor(name, perm,
+                                           NAVAL_NOTCHES.get(name)));
+            } else {
+                rotors.add(new FixedRotor(name, perm));
+            }
+        }
+        return new Machine(UPPER, numRotors, numRotors - 2, rotors);
+    }
+
+    /** Return a machine like navalMachine(NUMROTORS), but whose rotors are
+     *  added to its catalog as descriptions (see RotorCatalog.Spec), each
+     *  built only when first used, together with a fixed rotor "Broken"
+     *  whose permutation cannot be parsed. */
+    static Machine lazyNavalMachine(int numRotors) {
+        RotorCatalog catalog = new RotorCatalog(UPPER);
+        for (Rotor rotor : navalMachine(numRotors).availableRotors()) {
+            String name = rotor.name();
+            char kind = rotor.reflecting() ? 'R'
+                : NAVAL_NOTCHES.containsKey(name) ? 'M' : 'N';
+            catalog.add(new RotorCatalog.Spec(
+                kind, name, NAVALA.get(name),
+                kind == 'M' ? NAVAL_NOTCHES.get(name) : ""));
+        }
+        catalog.add(new RotorCatalog.Spec('N', "Broken", "(AB) (C1)", ""));
+        return new Machine(UPPER, numRotors, numRotors - 2, catalog);
+    }
+
     /** The mapping of the upper-case alphabet by NAVALA. */
     static final HashMap<String, String> NAVALA_MAP = new HashMap<>();
     static {
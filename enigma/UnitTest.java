@@ -10,7 +10,17 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(PermutationTest.class, MovingRotorTest.class);
+        textui.runClasses(PermutationTest.class, MovingRotorTest.class,
+                          MachineTest.class,
+                          AlphabetTest.class, CribSearchTest.class,
+                          CiphertextAttackTest.class, BombeSearchTest.class,
+                          CribScannerTest.class,
+                          ConfigSnapshotTest.class, SessionTest.class,
+                          EnigmaServerTest.class, EnigmaReaderTest.class,
+                          KeystreamCacheTest.class, BatchProcessorTest.class,
+                          SteppingPlanTest.class, EnigmaStatsTest.class,
+                          CheckpointTest.class, RotorCatalogTest.class,
+                          PipelineTest.class);
     }
 
 }